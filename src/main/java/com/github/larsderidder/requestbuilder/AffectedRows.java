@@ -0,0 +1,57 @@
+package com.github.larsderidder.requestbuilder;
+
+/**
+ * Result metadata reporting how many entities an operation touched.
+ */
+public class AffectedRows extends ResultMetadata {
+
+    private final long count;
+    private final boolean truncated;
+
+    /**
+     * Default constructor for deserialization.
+     */
+    public AffectedRows() {
+        this.count = 0;
+        this.truncated = false;
+    }
+
+    /**
+     * Creates metadata for a complete operation.
+     *
+     * @param count the number of affected entities
+     */
+    public AffectedRows(long count) {
+        this(count, false);
+    }
+
+    /**
+     * Creates metadata for an operation that may have stopped at a row cap.
+     *
+     * @param count the number of affected entities
+     * @param truncated true if matching entities remain because of the cap
+     */
+    public AffectedRows(long count, boolean truncated) {
+        super(count + (count == 1 ? " row affected" : " rows affected") + (truncated ? " (truncated)" : ""));
+        this.count = count;
+        this.truncated = truncated;
+    }
+
+    /**
+     * Gets the number of affected entities.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Checks if the operation stopped at its row cap while matches remained.
+     *
+     * @return true if truncated
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.larsderidder.requestbuilder;
+
+/**
+ * A request from a captured workload together with when it was issued.
+ */
+public final class CapturedRequest {
+
+    private final long offsetNanos;
+    private final OperationRequest<?> request;
+
+    /**
+     * Creates a captured request.
+     *
+     * @param offsetNanos nanoseconds between the start of the capture and this request
+     * @param request the request
+     */
+    public CapturedRequest(long offsetNanos, OperationRequest<?> request) {
+        this.offsetNanos = offsetNanos;
+        this.request = request;
+    }
+
+    /**
+     * Gets the time between the start of the capture and this request.
+     *
+     * @return the offset in nanoseconds
+     */
+    public long getOffsetNanos() {
+        return offsetNanos;
+    }
+
+    /**
+     * Gets the request.
+     *
+     * @return the request
+     */
+    public OperationRequest<?> getRequest() {
+        return request;
+    }
+}
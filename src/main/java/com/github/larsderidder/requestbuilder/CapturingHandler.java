@@ -0,0 +1,45 @@
+package com.github.larsderidder.requestbuilder;
+
+/**
+ * Decorator that records every request to a {@link WorkloadRecorder} before
+ * forwarding it, to capture production traffic shapes for replay.
+ */
+public class CapturingHandler extends ForwardingOperationHandler {
+
+    private final WorkloadRecorder recorder;
+
+    /**
+     * Creates a capturing handler.
+     *
+     * @param delegate the handler to forward to
+     * @param recorder the recorder that receives every request
+     */
+    public CapturingHandler(OperationHandler delegate, WorkloadRecorder recorder) {
+        super(delegate);
+        this.recorder = recorder;
+    }
+
+    @Override
+    public <T> CreateOperation.Response<T> handle(CreateOperation.Request<T> request) {
+        recorder.record(request);
+        return super.handle(request);
+    }
+
+    @Override
+    public <T> QueryOperation.Response<T> handle(QueryOperation.Request<T> request) {
+        recorder.record(request);
+        return super.handle(request);
+    }
+
+    @Override
+    public <T> UpdateOperation.Response<T> handle(UpdateOperation.Request<T> request) {
+        recorder.record(request);
+        return super.handle(request);
+    }
+
+    @Override
+    public <T> DeleteOperation.Response<T> handle(DeleteOperation.Request<T> request) {
+        recorder.record(request);
+        return super.handle(request);
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.larsderidder.requestbuilder;
+
+/**
+ * Immutable notification of a successful create, update or delete, as
+ * delivered by a {@link ChangeFeed}.
+ */
+public final class ChangeEvent {
+
+    /**
+     * Kind of mutation that produced the event.
+     */
+    public enum Type {
+        /** An entity was created */
+        CREATE,
+        /** An entity was updated */
+        UPDATE,
+        /** An entity was deleted */
+        DELETE
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final Class<?> entityType;
+    private final String id;
+    private final String parentId;
+    private final Object entity;
+    private final String version;
+
+    ChangeEvent(long sequence, Type type, Class<?> entityType, String id,
+                String parentId, Object entity, String version) {
+        this.sequence = sequence;
+        this.type = type;
+        this.entityType = entityType;
+        this.id = id;
+        this.parentId = parentId;
+        this.entity = entity;
+        this.version = version;
+    }
+
+    /**
+     * Gets the position of this event in the feed. Sequences are assigned in
+     * publication order and start at zero.
+     *
+     * @return the sequence
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the kind of mutation.
+     *
+     * @return the event type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the type of the mutated entity.
+     *
+     * @return the entity class
+     */
+    public Class<?> getEntityType() {
+        return entityType;
+    }
+
+    /**
+     * Gets the primary identifier of the mutated entity.
+     *
+     * @return the id, or null if it could not be determined or for a bulk
+     *         delete of all entities with {@link #getParentId()}
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Gets the parent identifier of the mutated entity.
+     *
+     * @return the parent id, or null if not known
+     */
+    public String getParentId() {
+        return parentId;
+    }
+
+    /**
+     * Gets the entity as created or updated.
+     *
+     * @return the entity, or null for deletes or when entities are not published
+     */
+    public Object getEntity() {
+        return entity;
+    }
+
+    /**
+     * Gets the entity version after the mutation.
+     *
+     * @return the version, or null if the handler reported none
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeEvent{" + sequence + " " + type + " "
+                + (entityType != null ? entityType.getSimpleName() : null) + " " + id + "}";
+    }
+}
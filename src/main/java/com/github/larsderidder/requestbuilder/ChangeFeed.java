@@ -0,0 +1,327 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Publishes {@link ChangeEvent}s through a fixed-size ring buffer to any number
+ * of subscribers, in the style of the LMAX Disruptor.
+ * <p>
+ * The slot array is allocated once, with a power-of-two number of slots.
+ * Unlike the Disruptor, events are not preallocated: each publish stores a new
+ * immutable event in its slot, so a lapped subscriber never sees an event
+ * change under it. Producers claim a sequence, wait until no
+ * {@link Backpressure#BLOCK blocking} subscriber is a full ring behind and the
+ * slot's event from the previous lap has been published, then publish into the
+ * slot. Each {@link Subscription} keeps its own cursor and reads events in
+ * sequence order without locks. Subscribers that use {@link Backpressure#DROP} or
+ * {@link Backpressure#FAIL} never hold up producers; they detect being lapped
+ * when they next poll.
+ * <p>
+ * Publishing is safe from multiple threads with {@link ProducerType#MULTI}.
+ * With {@link ProducerType#SINGLE} the caller guarantees that only one thread
+ * publishes, which saves a CAS per event. A subscription must only be polled
+ * by one thread at a time.
+ */
+public class ChangeFeed {
+
+    /**
+     * How many threads may publish concurrently.
+     */
+    public enum ProducerType {
+        /** Exactly one publishing thread */
+        SINGLE,
+        /** Any number of publishing threads */
+        MULTI
+    }
+
+    /**
+     * What happens when a subscriber falls a full ring behind the producers.
+     */
+    public enum Backpressure {
+        /** Producers wait until the subscriber catches up */
+        BLOCK,
+        /** The subscriber skips the overwritten events and counts them as dropped */
+        DROP,
+        /** The subscriber is closed and its next poll throws */
+        FAIL
+    }
+
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+    private final AtomicReferenceArray<ChangeEvent> slots;
+    private final int capacity;
+    private final int mask;
+    private final ProducerType producerType;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private volatile Subscription[] subscriptions = NO_SUBSCRIPTIONS;
+
+    /**
+     * Creates a multi-producer feed.
+     *
+     * @param capacity number of slots, must be a power of two
+     */
+    public ChangeFeed(int capacity) {
+        this(capacity, ProducerType.MULTI);
+    }
+
+    /**
+     * Creates a feed.
+     *
+     * @param capacity number of slots, must be a power of two
+     * @param producerType whether one or many threads publish
+     */
+    public ChangeFeed(int capacity, ProducerType producerType) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.producerType = producerType != null ? producerType : ProducerType.MULTI;
+    }
+
+    /**
+     * Gets the number of slots in the ring.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the sequence the next published event will receive.
+     *
+     * @return the next sequence
+     */
+    public long getNextSequence() {
+        return nextSequence.get();
+    }
+
+    /**
+     * Publishes an event. Blocks while a {@link Backpressure#BLOCK} subscriber
+     * is a full ring behind.
+     *
+     * @param type the kind of mutation
+     * @param entityType the class of the mutated entity
+     * @param id the entity id
+     * @param parentId the parent id, may be null
+     * @param entity the entity, may be null
+     * @param version the new entity version, may be null
+     * @return the sequence assigned to the event
+     */
+    public long publish(ChangeEvent.Type type, Class<?> entityType, String id,
+                        String parentId, Object entity, String version) {
+        long sequence;
+        if (producerType == ProducerType.SINGLE) {
+            sequence = nextSequence.get();
+            nextSequence.lazySet(sequence + 1);
+        } else {
+            sequence = nextSequence.getAndIncrement();
+        }
+        awaitCapacity(sequence);
+        int index = (int) sequence & mask;
+        if (producerType == ProducerType.MULTI) {
+            awaitPreviousLap(index, sequence - capacity);
+        }
+        slots.set(index, new ChangeEvent(sequence, type, entityType, id, parentId, entity, version));
+        return sequence;
+    }
+
+    /**
+     * Waits until the slot holds the event published one lap earlier. A
+     * producer that claimed its sequence a lap ahead of a slow one would
+     * otherwise publish first and have its event overwritten by the older one,
+     * losing it without any subscriber counting a drop.
+     */
+    private void awaitPreviousLap(int index, long previous) {
+        if (previous < 0) {
+            return;
+        }
+        ChangeEvent current;
+        while ((current = slots.get(index)) == null || current.getSequence() < previous) {
+            LockSupport.parkNanos(1L);
+        }
+    }
+
+    /**
+     * Subscribes to events published from now on.
+     *
+     * @param backpressure what to do when this subscriber falls behind
+     * @return the new subscription
+     */
+    public Subscription subscribe(Backpressure backpressure) {
+        synchronized (this) {
+            Subscription subscription = new Subscription(backpressure, nextSequence.get() - 1);
+            Subscription[] current = subscriptions;
+            Subscription[] updated = new Subscription[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = subscription;
+            subscriptions = updated;
+            return subscription;
+        }
+    }
+
+    private synchronized void unsubscribe(Subscription subscription) {
+        Subscription[] current = subscriptions;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == subscription) {
+                Subscription[] updated = new Subscription[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                subscriptions = updated;
+                return;
+            }
+        }
+    }
+
+    private void awaitCapacity(long sequence) {
+        long wrapPoint = sequence - capacity;
+        if (wrapPoint < 0) {
+            return;
+        }
+        for (Subscription subscription : subscriptions) {
+            if (subscription.backpressure != Backpressure.BLOCK) {
+                continue;
+            }
+            while (subscription.cursor.get() < wrapPoint && !subscription.closed) {
+                LockSupport.parkNanos(1L);
+            }
+        }
+    }
+
+    /**
+     * A subscriber's position in the feed. Poll from a single thread.
+     */
+    public final class Subscription {
+
+        private final Backpressure backpressure;
+        private final AtomicLong cursor;
+        private volatile long dropped;
+        private volatile boolean closed;
+        private volatile boolean failed;
+
+        private Subscription(Backpressure backpressure, long cursor) {
+            this.backpressure = backpressure != null ? backpressure : Backpressure.BLOCK;
+            this.cursor = new AtomicLong(cursor);
+        }
+
+        /**
+         * Delivers all currently available events to the consumer.
+         *
+         * @param consumer receives events in sequence order
+         * @return the number of events delivered
+         * @throws IllegalStateException if this FAIL subscription was overrun
+         */
+        public int poll(Consumer<? super ChangeEvent> consumer) {
+            return poll(consumer, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Delivers up to {@code maxEvents} available events to the consumer.
+         * Never blocks.
+         *
+         * @param consumer receives events in sequence order
+         * @param maxEvents the maximum number of events to deliver
+         * @return the number of events delivered
+         * @throws IllegalStateException if this FAIL subscription was overrun
+         */
+        public int poll(Consumer<? super ChangeEvent> consumer, int maxEvents) {
+            if (failed) {
+                throw new IllegalStateException("Subscription was overrun and has been closed");
+            }
+            if (closed) {
+                return 0;
+            }
+            long next = cursor.get() + 1;
+            int delivered = 0;
+            while (delivered < maxEvents) {
+                ChangeEvent event = slots.get((int) next & mask);
+                if (event == null || event.getSequence() < next) {
+                    break;
+                }
+                if (event.getSequence() > next) {
+                    next = overrun(next);
+                    continue;
+                }
+                consumer.accept(event);
+                delivered++;
+                next++;
+                if (backpressure == Backpressure.BLOCK) {
+                    cursor.lazySet(next - 1);
+                }
+            }
+            cursor.lazySet(next - 1);
+            return delivered;
+        }
+
+        private long overrun(long next) {
+            if (backpressure == Backpressure.FAIL) {
+                failed = true;
+                close();
+                throw new IllegalStateException("Subscription fell more than " + capacity
+                        + " events behind at sequence " + next);
+            }
+            long oldestRetained = nextSequence.get() - capacity;
+            long resume = Math.max(next + 1, oldestRetained);
+            dropped += resume - next;
+            return resume;
+        }
+
+        /**
+         * Gets the number of published events this subscriber has not yet polled.
+         *
+         * @return the lag in events
+         */
+        public long getLag() {
+            return Math.max(0, nextSequence.get() - 1 - cursor.get());
+        }
+
+        /**
+         * Gets the number of events skipped because a DROP subscription was overrun.
+         *
+         * @return the dropped event count
+         */
+        public long getDroppedCount() {
+            return dropped;
+        }
+
+        /**
+         * Gets the backpressure policy of this subscription.
+         *
+         * @return the policy
+         */
+        public Backpressure getBackpressure() {
+            return backpressure;
+        }
+
+        /**
+         * Checks if this FAIL subscription was closed because it fell behind.
+         *
+         * @return true if overrun
+         */
+        public boolean isFailed() {
+            return failed;
+        }
+
+        /**
+         * Checks if this subscription no longer receives events.
+         *
+         * @return true if closed
+         */
+        public boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Stops receiving events and releases any producers waiting on this subscriber.
+         */
+        public void close() {
+            closed = true;
+            unsubscribe(this);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.larsderidder.requestbuilder;
+
+/**
+ * Decorator that publishes a {@link ChangeEvent} to a {@link ChangeFeed} for
+ * every successful create, update and delete handled by its delegate. Queries
+ * and failed or conflicting operations publish nothing.
+ * <p>
+ * Create and update requests carry only the entity, so their ids are read
+ * through the registered {@link EntityMapping}s. Entities without a mapping
+ * are still published, with a null id.
+ */
+public class ChangeFeedHandler extends ForwardingOperationHandler {
+
+    private final ChangeFeed feed;
+    private final EntityMappings mappings;
+    private final boolean includeEntities;
+
+    /**
+     * Creates a handler that publishes events including the entity.
+     *
+     * @param delegate the handler to forward to
+     * @param feed the feed to publish to
+     * @param mappings the entity mappings used to read ids
+     */
+    public ChangeFeedHandler(OperationHandler delegate, ChangeFeed feed, EntityMappings mappings) {
+        this(delegate, feed, mappings, true);
+    }
+
+    /**
+     * Creates a handler.
+     *
+     * @param delegate the handler to forward to
+     * @param feed the feed to publish to
+     * @param mappings the entity mappings used to read ids
+     * @param includeEntities whether events carry the created or updated entity
+     */
+    public ChangeFeedHandler(OperationHandler delegate, ChangeFeed feed, EntityMappings mappings,
+                             boolean includeEntities) {
+        super(delegate);
+        this.feed = feed;
+        this.mappings = mappings != null ? mappings : new EntityMappings();
+        this.includeEntities = includeEntities;
+    }
+
+    @Override
+    public <T> CreateOperation.Response<T> handle(CreateOperation.Request<T> request) {
+        CreateOperation.Response<T> response = getDelegate().handle(request);
+        if (response != null && response.isSuccess()) {
+            T entity = response.getEntity() != null ? response.getEntity() : request.getEntity();
+            publish(ChangeEvent.Type.CREATE, request.getEntityType(), entity, response.getVersion());
+        }
+        return response;
+    }
+
+    @Override
+    public <T> UpdateOperation.Response<T> handle(UpdateOperation.Request<T> request) {
+        UpdateOperation.Response<T> response = getDelegate().handle(request);
+        if (response != null && response.isSuccess()) {
+            publish(ChangeEvent.Type.UPDATE, request.getEntityType(), request.getEntity(), response.getVersion());
+        }
+        return response;
+    }
+
+    @Override
+    public <T> DeleteOperation.Response<T> handle(DeleteOperation.Request<T> request) {
+        DeleteOperation.Response<T> response = getDelegate().handle(request);
+        if (response != null && response.isSuccess()) {
+            feed.publish(ChangeEvent.Type.DELETE, request.getEntityType(), request.getId(),
+                    request.getParentId(), null, response.getVersion());
+        }
+        return response;
+    }
+
+    private <T> void publish(ChangeEvent.Type type, Class<T> entityType, T entity, String version) {
+        feed.publish(type, entityType, mappings.idOf(entityType, entity), mappings.parentIdOf(entityType, entity),
+                includeEntities ? entity : null, version);
+    }
+}
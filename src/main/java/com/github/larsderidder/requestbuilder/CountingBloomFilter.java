@@ -0,0 +1,164 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counting Bloom filter over string ids. Answers "definitely absent" or
+ * "possibly present", and unlike a plain Bloom filter supports removal.
+ * <p>
+ * Counters are four bits wide and packed eight to an int. A counter that
+ * reaches 15 sticks there and is never decremented again, which can only
+ * cause false positives, never false negatives. All operations are lock-free.
+ * Removing an id that was never added can cause false negatives, so callers
+ * must only remove ids they know were added.
+ */
+public class CountingBloomFilter {
+
+    private static final int COUNTERS_PER_WORD = 8;
+    private static final int MAX_COUNT = 0xf;
+
+    private final AtomicIntegerArray words;
+    private final int counters;
+    private final int hashes;
+    private final long expectedInsertions;
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * Creates a filter sized for the given number of ids and false-positive
+     * probability.
+     *
+     * @param expectedInsertions the number of ids the filter should hold
+     * @param falsePositiveRate the target false-positive probability, between 0 and 1
+     */
+    public CountingBloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions < 1) {
+            expectedInsertions = 1;
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1: " + falsePositiveRate);
+        }
+        double bits = -expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        this.counters = (int) Math.min(Integer.MAX_VALUE - COUNTERS_PER_WORD, Math.max(64, Math.ceil(bits)));
+        this.hashes = Math.max(1, (int) Math.round((double) counters / expectedInsertions * Math.log(2)));
+        this.words = new AtomicIntegerArray((counters + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD);
+        this.expectedInsertions = expectedInsertions;
+    }
+
+    /**
+     * Adds an id.
+     *
+     * @param id the id
+     */
+    public void add(String id) {
+        long hash = hash(id);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            increment(index(h1, h2, i));
+        }
+        size.incrementAndGet();
+    }
+
+    /**
+     * Removes an id previously added.
+     *
+     * @param id the id
+     */
+    public void remove(String id) {
+        long hash = hash(id);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            decrement(index(h1, h2, i));
+        }
+        size.decrementAndGet();
+    }
+
+    /**
+     * Checks if an id may have been added.
+     *
+     * @param id the id
+     * @return false if the id is definitely absent
+     */
+    public boolean mightContain(String id) {
+        long hash = hash(id);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            if (counter(index(h1, h2, i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of ids added minus those removed.
+     *
+     * @return the approximate id count
+     */
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * Gets the number of ids the filter was sized for.
+     *
+     * @return the expected insertions
+     */
+    public long getExpectedInsertions() {
+        return expectedInsertions;
+    }
+
+    private int index(int h1, int h2, int i) {
+        int combined = h1 + i * h2;
+        return (combined & Integer.MAX_VALUE) % counters;
+    }
+
+    private int counter(int index) {
+        return (words.get(index >>> 3) >>> ((index & 7) << 2)) & MAX_COUNT;
+    }
+
+    private void increment(int index) {
+        int word = index >>> 3;
+        int shift = (index & 7) << 2;
+        while (true) {
+            int current = words.get(word);
+            int count = (current >>> shift) & MAX_COUNT;
+            if (count == MAX_COUNT || words.compareAndSet(word, current, current + (1 << shift))) {
+                return;
+            }
+        }
+    }
+
+    private void decrement(int index) {
+        int word = index >>> 3;
+        int shift = (index & 7) << 2;
+        while (true) {
+            int current = words.get(word);
+            int count = (current >>> shift) & MAX_COUNT;
+            if (count == 0 || count == MAX_COUNT || words.compareAndSet(word, current, current - (1 << shift))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units, followed by the MurmurHash3
+     * finalizer to spread the bits for double hashing.
+     */
+    private static long hash(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,5 +1,8 @@
 package com.github.larsderidder.requestbuilder;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Represents a create operation request and response pair.
  */
@@ -20,6 +23,8 @@ public class CreateOperation {
         public static class Builder<BT> {
             private BT entity;
             private final Class<BT> entityType;
+            private String idempotencyKey;
+            private TraceContext traceContext;
 
             /**
              * Creates a new builder for the given entity type.
@@ -41,23 +46,65 @@ public class CreateOperation {
                 return this;
             }
 
+            /**
+             * Sets a client-chosen key identifying this logical create across
+             * retries. Handlers that deduplicate return the original response
+             * for a repeated key instead of creating again.
+             *
+             * @param idempotencyKey the key, unique per logical operation
+             * @return this builder
+             */
+            public Builder<BT> idempotencyKey(String idempotencyKey) {
+                this.idempotencyKey = idempotencyKey;
+                return this;
+            }
+
+            /**
+             * Propagates a trace context with the request.
+             *
+             * @param traceContext the caller's trace context
+             * @return this builder
+             */
+            public Builder<BT> trace(TraceContext traceContext) {
+                this.traceContext = traceContext;
+                return this;
+            }
+
+            /**
+             * Clears everything but the entity type, so one builder can be
+             * reused for many requests. Builders are not thread-safe; keep
+             * one per thread.
+             *
+             * @return this builder
+             */
+            public Builder<BT> reset() {
+                this.entity = null;
+                this.idempotencyKey = null;
+                this.traceContext = null;
+                return this;
+            }
+
             /**
              * Builds the create request.
              *
              * @return the constructed request
              */
             public Request<BT> build() {
-                return new Request<>(entityType, entity);
+                Request<BT> request = new Request<>(entityType, entity, idempotencyKey);
+                request.setTraceContext(traceContext);
+                return request;
             }
         }
 
-        private final T entity;
+        private T entity;
+        private String idempotencyKey;
 
         /**
          * Default constructor for deserialization.
          */
         public Request() {
             this.entity = null;
+            this.idempotencyKey = null;
         }
 
         /**
@@ -67,8 +114,32 @@ public class CreateOperation {
          * @param entity the entity to create
          */
         public Request(Class<T> entityType, T entity) {
+            this(entityType, entity, null);
+        }
+
+        /**
+         * Creates a new create request with an idempotency key.
+         *
+         * @param entityType the class of the entity
+         * @param entity the entity to create
+         * @param idempotencyKey the key identifying this create across retries, or null
+         */
+        public Request(Class<T> entityType, T entity, String idempotencyKey) {
             super(entityType);
             this.entity = entity;
+            this.idempotencyKey = idempotencyKey;
+        }
+
+        @Override
+        public String getOperationName() {
+            return "create";
+        }
+
+        @Override
+        void clear() {
+            super.clear();
+            entity = null;
+            idempotencyKey = null;
         }
 
         /**
@@ -79,6 +150,24 @@ public class CreateOperation {
         public T getEntity() {
             return entity;
         }
+
+        /**
+         * Gets the client-chosen key identifying this logical create across retries.
+         *
+         * @return the idempotency key, or null if not set
+         */
+        public String getIdempotencyKey() {
+            return idempotencyKey;
+        }
+
+        /**
+         * Checks if an idempotency key is set.
+         *
+         * @return true if the request may be deduplicated
+         */
+        public boolean hasIdempotencyKey() {
+            return idempotencyKey != null && !idempotencyKey.isEmpty();
+        }
     }
 
     /**
@@ -88,7 +177,7 @@ public class CreateOperation {
      */
     public static class Response<T> extends OperationResponse {
 
-        private final T entity;
+        private T entity;
 
         /**
          * Default constructor for deserialization.
@@ -154,6 +243,12 @@ public class CreateOperation {
             this.entity = entity;
         }
 
+        @Override
+        void clear() {
+            super.clear();
+            entity = null;
+        }
+
         /**
          * Gets the created entity.
          *
@@ -163,4 +258,125 @@ public class CreateOperation {
             return entity;
         }
     }
+
+    /**
+     * Opt-in pool of recyclable create requests and responses, for hot loops
+     * where allocating an envelope per entity shows up as GC pressure. Requests
+     * and responses built the normal way are not affected.
+     * <p>
+     * Thread-safety rules:
+     * <ul>
+     * <li>The pool is thread-safe; any thread may take and release instances.</li>
+     * <li>An instance taken from the pool belongs to the taking thread until it
+     * calls {@code release()}. It must not be shared with other threads, and no
+     * reference to it may be used after release, since another thread may
+     * already be reusing it.</li>
+     * <li>Release each instance exactly once. Releasing twice throws, unless the
+     * instance was reused in between, which cannot be detected.</li>
+     * <li>Only pass pooled requests to handlers that do not keep them after
+     * {@code handle} returns, and only release responses that no handler
+     * keeps. Responses cached by {@link IdempotentHandler} must never be
+     * released.</li>
+     * </ul>
+     * When the pool is empty a new instance is allocated; when it is full a
+     * released instance is left to the garbage collector.
+     *
+     * @param <T> the entity type
+     */
+    public static class Pool<T> {
+
+        private final Class<T> entityType;
+        private final ArrayBlockingQueue<Request<T>> requests;
+        private final ArrayBlockingQueue<Response<T>> responses;
+        private final AtomicLong allocated = new AtomicLong();
+
+        /**
+         * Creates a pool.
+         *
+         * @param entityType the class of the entity
+         * @param capacity the maximum number of idle requests, and of idle
+         *                 responses, kept for reuse
+         */
+        public Pool(Class<T> entityType, int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("capacity must be positive: " + capacity);
+            }
+            this.entityType = entityType;
+            this.requests = new ArrayBlockingQueue<>(capacity);
+            this.responses = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /**
+         * Takes a create request from the pool.
+         *
+         * @param entity the entity to create
+         * @return a request to release after handling
+         */
+        public Request<T> request(T entity) {
+            return request(entity, null);
+        }
+
+        /**
+         * Takes a create request with an idempotency key from the pool.
+         *
+         * @param entity the entity to create
+         * @param idempotencyKey the key identifying this create across retries, or null
+         * @return a request to release after handling
+         */
+        public Request<T> request(T entity, String idempotencyKey) {
+            Request<T> request = requests.poll();
+            if (request == null) {
+                Request<T> created = new Request<>(entityType, null);
+                created.setRecycler(() -> requests.offer(created));
+                allocated.incrementAndGet();
+                request = created;
+            }
+            request.acquire();
+            request.entity = entity;
+            request.idempotencyKey = idempotencyKey;
+            return request;
+        }
+
+        /**
+         * Takes a create response from the pool, for handlers that answer
+         * pooled requests.
+         *
+         * @param status the operation status
+         * @param entity the created entity
+         * @return a response for the caller to release
+         */
+        public Response<T> response(OperationResponse.Status status, T entity) {
+            Response<T> response = responses.poll();
+            if (response == null) {
+                Response<T> created = new Response<>();
+                created.setRecycler(() -> responses.offer(created));
+                allocated.incrementAndGet();
+                response = created;
+            }
+            response.acquire();
+            response.setStatus(status);
+            response.entity = entity;
+            return response;
+        }
+
+        /**
+         * Gets the number of requests and responses this pool had to allocate.
+         * A count that keeps growing under steady load means instances are not
+         * released, or the capacity is too small.
+         *
+         * @return the allocation count
+         */
+        public long getAllocatedCount() {
+            return allocated.get();
+        }
+
+        /**
+         * Gets the number of idle instances ready for reuse.
+         *
+         * @return the idle request and response count
+         */
+        public int getIdleCount() {
+            return requests.size() + responses.size();
+        }
+    }
 }
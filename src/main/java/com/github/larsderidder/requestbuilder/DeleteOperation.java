@@ -22,6 +22,12 @@ public class DeleteOperation {
             private final Class<BT> entityType;
             private String id;
             private String parentId;
+            private String ifVersion;
+            private boolean allWithParent;
+            private int maxRows;
+            private TraceContext traceContext;
+            private Identifier idKey;
+            private Identifier parentKey;
 
             /**
              * Creates a new builder for the given entity type.
@@ -40,6 +46,20 @@ public class DeleteOperation {
              */
             public Builder<BT> id(String id) {
                 this.id = id;
+                this.idKey = null;
+                return this;
+            }
+
+            /**
+             * Sets the primary identifier from a compact identifier, which the
+             * request keeps for handlers that key on it.
+             *
+             * @param id the primary ID
+             * @return this builder
+             */
+            public Builder<BT> id(Identifier id) {
+                this.id = null;
+                this.idKey = id;
                 return this;
             }
 
@@ -51,6 +71,95 @@ public class DeleteOperation {
              */
             public Builder<BT> parentId(String parentId) {
                 this.parentId = parentId;
+                this.parentKey = null;
+                return this;
+            }
+
+            /**
+             * Sets the parent identifier from a compact identifier, which the
+             * request keeps for handlers that key on it.
+             *
+             * @param parentId the parent ID
+             * @return this builder
+             */
+            public Builder<BT> parentId(Identifier parentId) {
+                this.parentId = null;
+                this.parentKey = parentId;
+                return this;
+            }
+
+            /**
+             * Deletes every entity with the given parent instead of a single
+             * entity. Handlers run this as one range or index operation and
+             * report the number of deleted entities as {@link AffectedRows}.
+             *
+             * @param parentId the parent ID whose children are deleted
+             * @return this builder
+             */
+            public Builder<BT> allWithParent(String parentId) {
+                if (parentId == null || parentId.isEmpty()) {
+                    throw new IllegalArgumentException("parentId must not be empty");
+                }
+                this.parentId = parentId;
+                this.parentKey = null;
+                this.allWithParent = true;
+                return this;
+            }
+
+            /**
+             * Caps the number of entities one bulk delete may remove. The
+             * response marks the result as truncated when more remain.
+             *
+             * @param maxRows the maximum number of entities, or 0 for no limit
+             * @return this builder
+             */
+            public Builder<BT> maxRows(int maxRows) {
+                if (maxRows < 0) {
+                    throw new IllegalArgumentException("maxRows must not be negative");
+                }
+                this.maxRows = maxRows;
+                return this;
+            }
+
+            /**
+             * Only deletes the entity if it still has the given version. A
+             * mismatch yields a CONFLICT response.
+             *
+             * @param version the version the caller last read
+             * @return this builder
+             */
+            public Builder<BT> ifVersion(String version) {
+                this.ifVersion = version;
+                return this;
+            }
+
+            /**
+             * Propagates a trace context with the request.
+             *
+             * @param traceContext the caller's trace context
+             * @return this builder
+             */
+            public Builder<BT> trace(TraceContext traceContext) {
+                this.traceContext = traceContext;
+                return this;
+            }
+
+            /**
+             * Clears everything but the entity type, so one builder can be
+             * reused for many requests. Builders are not thread-safe; keep
+             * one per thread.
+             *
+             * @return this builder
+             */
+            public Builder<BT> reset() {
+                this.id = null;
+                this.parentId = null;
+                this.ifVersion = null;
+                this.allWithParent = false;
+                this.maxRows = 0;
+                this.traceContext = null;
+                this.idKey = null;
+                this.parentKey = null;
                 return this;
             }
 
@@ -60,12 +169,20 @@ public class DeleteOperation {
              * @return the constructed request
              */
             public Request<BT> build() {
-                return new Request<>(entityType, id, parentId);
+                Request<BT> request = new Request<>(entityType, id, parentId, ifVersion, allWithParent, maxRows);
+                request.setTraceContext(traceContext);
+                request.setIdentifiers(idKey, parentKey);
+                return request;
             }
         }
 
-        private final String id;
-        private final String parentId;
+        private String id;
+        private String parentId;
+        private final String ifVersion;
+        private final boolean allWithParent;
+        private final int maxRows;
+        private Identifier idKey;
+        private Identifier parentKey;
 
         /**
          * Default constructor for deserialization.
@@ -73,6 +190,9 @@ public class DeleteOperation {
         public Request() {
             id = null;
             parentId = null;
+            ifVersion = null;
+            allWithParent = false;
+            maxRows = 0;
         }
 
         /**
@@ -83,9 +203,79 @@ public class DeleteOperation {
          * @param parentId the parent identifier
          */
         public Request(Class<T> entityType, String id, String parentId) {
+            this(entityType, id, parentId, null);
+        }
+
+        /**
+         * Creates a new conditional delete request.
+         *
+         * @param entityType the class of the entity
+         * @param id the primary identifier
+         * @param parentId the parent identifier
+         * @param ifVersion the expected current version, or null for an unconditional delete
+         */
+        public Request(Class<T> entityType, String id, String parentId, String ifVersion) {
+            this(entityType, id, parentId, ifVersion, false, 0);
+        }
+
+        /**
+         * Creates a new delete request, optionally selecting all children of a parent.
+         *
+         * @param entityType the class of the entity
+         * @param id the primary identifier
+         * @param parentId the parent identifier
+         * @param ifVersion the expected current version, or null for an unconditional delete
+         * @param allWithParent whether to delete every entity with the given parent
+         * @param maxRows the maximum number of entities a bulk delete may remove, or 0 for no limit
+         */
+        public Request(Class<T> entityType, String id, String parentId, String ifVersion,
+                       boolean allWithParent, int maxRows) {
             super(entityType);
             this.id = id;
             this.parentId = parentId;
+            this.ifVersion = ifVersion;
+            this.allWithParent = allWithParent;
+            this.maxRows = maxRows;
+        }
+
+        @Override
+        public String getOperationName() {
+            return "delete";
+        }
+
+        /**
+         * Attaches identifiers the builder was given. Their string forms are
+         * only built if a string getter is called.
+         */
+        void setIdentifiers(Identifier id, Identifier parentId) {
+            this.idKey = id;
+            this.parentKey = parentId;
+        }
+
+        /**
+         * Gets the primary identifier as a compact identifier, creating it on
+         * first use if the request was built from a string.
+         *
+         * @return the identifier, or null if not set
+         */
+        public Identifier getIdKey() {
+            if (idKey == null && id != null) {
+                idKey = Identifier.of(id);
+            }
+            return idKey;
+        }
+
+        /**
+         * Gets the parent identifier as a compact identifier, creating it on
+         * first use if the request was built from a string.
+         *
+         * @return the parent identifier, or null if not set
+         */
+        public Identifier getParentIdKey() {
+            if (parentKey == null && parentId != null) {
+                parentKey = Identifier.of(parentId);
+            }
+            return parentKey;
         }
 
         /**
@@ -94,6 +284,9 @@ public class DeleteOperation {
          * @return the ID
          */
         public String getId() {
+            if (id == null && idKey != null) {
+                id = idKey.toString();
+            }
             return id;
         }
 
@@ -103,8 +296,47 @@ public class DeleteOperation {
          * @return the parent ID
          */
         public String getParentId() {
+            if (parentId == null && parentKey != null) {
+                parentId = parentKey.toString();
+            }
             return parentId;
         }
+
+        /**
+         * Gets the version the stored entity must have for the delete to apply.
+         *
+         * @return the expected version, or null if unconditional
+         */
+        public String getIfVersion() {
+            return ifVersion;
+        }
+
+        /**
+         * Checks if this is a conditional delete.
+         *
+         * @return true if an expected version is set
+         */
+        public boolean hasIfVersion() {
+            return ifVersion != null && !ifVersion.isEmpty();
+        }
+
+        /**
+         * Checks if this request deletes every entity with its parent ID.
+         *
+         * @return true for a bulk delete by parent
+         */
+        public boolean isAllWithParent() {
+            return allWithParent;
+        }
+
+        /**
+         * Gets the maximum number of entities a bulk delete may remove.
+         *
+         * @return the cap, or 0 for no limit
+         */
+        public int getMaxRows() {
+            return maxRows;
+        }
     }
 
     /**
@@ -139,5 +371,26 @@ public class DeleteOperation {
         public Response(Status status, String message) {
             super(status, message);
         }
+
+        /**
+         * Creates a response with status, message, and metadata.
+         *
+         * @param status the operation status
+         * @param message descriptive message
+         * @param metadata additional result metadata, such as {@link AffectedRows}
+         */
+        public Response(Status status, String message, ResultMetadata metadata) {
+            super(status, message, metadata);
+        }
+
+        /**
+         * Gets the number of deleted entities reported by the handler.
+         *
+         * @return the count from {@link AffectedRows} metadata, or -1 if not reported
+         */
+        public long getAffectedRows() {
+            AffectedRows affected = getMetadata(AffectedRows.class);
+            return affected != null ? affected.getCount() : -1;
+        }
     }
 }
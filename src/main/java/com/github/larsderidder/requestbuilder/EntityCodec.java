@@ -0,0 +1,27 @@
+package com.github.larsderidder.requestbuilder;
+
+/**
+ * Converts entities to and from text, for tools that persist requests such as
+ * {@link WorkloadRecorder}. Implementations typically delegate to the JSON
+ * mapper an application already uses.
+ */
+public interface EntityCodec {
+
+    /**
+     * Encodes an entity.
+     *
+     * @param entity the entity, never null
+     * @return the encoded entity
+     */
+    String encode(Object entity);
+
+    /**
+     * Decodes an entity.
+     *
+     * @param <T> the entity type
+     * @param entityType the class of the entity
+     * @param encoded text produced by {@link #encode(Object)}
+     * @return the entity
+     */
+    <T> T decode(Class<T> entityType, String encoded);
+}
@@ -0,0 +1,170 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.function.Function;
+
+/**
+ * Describes how to read the identifiers used by requests (id, parentId,
+ * referenceId and contextId) from an entity instance. Handlers use this to
+ * index entities and to report ids for create and update operations, whose
+ * requests only carry the entity itself.
+ *
+ * @param <T> the entity type
+ */
+public final class EntityMapping<T> {
+
+    /**
+     * Builder for constructing entity mappings.
+     *
+     * @param <BT> the entity type
+     */
+    public static class Builder<BT> {
+
+        private final Class<BT> entityType;
+        private Function<? super BT, String> id;
+        private Function<? super BT, String> parentId;
+        private Function<? super BT, String> referenceId;
+        private Function<? super BT, String> contextId;
+
+        /**
+         * Creates a new builder for the given entity type.
+         *
+         * @param entityType the class of the entity
+         */
+        public Builder(Class<BT> entityType) {
+            this.entityType = entityType;
+        }
+
+        /**
+         * Sets the accessor for the primary identifier. Required.
+         *
+         * @param id the id accessor
+         * @return this builder
+         */
+        public Builder<BT> id(Function<? super BT, String> id) {
+            this.id = id;
+            return this;
+        }
+
+        /**
+         * Sets the accessor for the parent identifier.
+         *
+         * @param parentId the parent id accessor
+         * @return this builder
+         */
+        public Builder<BT> parentId(Function<? super BT, String> parentId) {
+            this.parentId = parentId;
+            return this;
+        }
+
+        /**
+         * Sets the accessor for the reference identifier.
+         *
+         * @param referenceId the reference id accessor
+         * @return this builder
+         */
+        public Builder<BT> referenceId(Function<? super BT, String> referenceId) {
+            this.referenceId = referenceId;
+            return this;
+        }
+
+        /**
+         * Sets the accessor for the context identifier.
+         *
+         * @param contextId the context id accessor
+         * @return this builder
+         */
+        public Builder<BT> contextId(Function<? super BT, String> contextId) {
+            this.contextId = contextId;
+            return this;
+        }
+
+        /**
+         * Builds the mapping.
+         *
+         * @return the constructed mapping
+         */
+        public EntityMapping<BT> build() {
+            if (id == null) {
+                throw new IllegalStateException("An id accessor is required for " + entityType.getName());
+            }
+            return new EntityMapping<>(entityType, id, parentId, referenceId, contextId);
+        }
+    }
+
+    private final Class<T> entityType;
+    private final Function<? super T, String> id;
+    private final Function<? super T, String> parentId;
+    private final Function<? super T, String> referenceId;
+    private final Function<? super T, String> contextId;
+
+    private EntityMapping(Class<T> entityType, Function<? super T, String> id,
+                          Function<? super T, String> parentId,
+                          Function<? super T, String> referenceId,
+                          Function<? super T, String> contextId) {
+        this.entityType = entityType;
+        this.id = id;
+        this.parentId = parentId;
+        this.referenceId = referenceId;
+        this.contextId = contextId;
+    }
+
+    /**
+     * Creates a builder for a mapping of the given entity type.
+     *
+     * @param <T> the entity type
+     * @param entityType the class of the entity
+     * @return a new mapping builder
+     */
+    public static <T> Builder<T> of(Class<T> entityType) {
+        return new Builder<>(entityType);
+    }
+
+    /**
+     * Gets the entity type this mapping describes.
+     *
+     * @return the entity class
+     */
+    public Class<T> getEntityType() {
+        return entityType;
+    }
+
+    /**
+     * Reads the primary identifier of an entity.
+     *
+     * @param entity the entity
+     * @return the id, or null if the entity is null
+     */
+    public String idOf(T entity) {
+        return entity != null ? id.apply(entity) : null;
+    }
+
+    /**
+     * Reads the parent identifier of an entity.
+     *
+     * @param entity the entity
+     * @return the parent id, or null if unmapped
+     */
+    public String parentIdOf(T entity) {
+        return entity != null && parentId != null ? parentId.apply(entity) : null;
+    }
+
+    /**
+     * Reads the reference identifier of an entity.
+     *
+     * @param entity the entity
+     * @return the reference id, or null if unmapped
+     */
+    public String referenceIdOf(T entity) {
+        return entity != null && referenceId != null ? referenceId.apply(entity) : null;
+    }
+
+    /**
+     * Reads the context identifier of an entity.
+     *
+     * @param entity the entity
+     * @return the context id, or null if unmapped
+     */
+    public String contextIdOf(T entity) {
+        return entity != null && contextId != null ? contextId.apply(entity) : null;
+    }
+}
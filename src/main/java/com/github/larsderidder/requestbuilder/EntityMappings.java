@@ -0,0 +1,80 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of {@link EntityMapping}s keyed by entity type. Safe to share
+ * between handlers and threads.
+ */
+public class EntityMappings {
+
+    private final ConcurrentMap<Class<?>, EntityMapping<?>> mappings = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a mapping, replacing any earlier mapping for the same type.
+     *
+     * @param <T> the entity type
+     * @param mapping the mapping to register
+     * @return this registry
+     */
+    public <T> EntityMappings register(EntityMapping<T> mapping) {
+        mappings.put(mapping.getEntityType(), mapping);
+        return this;
+    }
+
+    /**
+     * Gets the mapping for an entity type.
+     *
+     * @param <T> the entity type
+     * @param entityType the class of the entity
+     * @return the mapping, or null if none is registered
+     */
+    @SuppressWarnings("unchecked")
+    public <T> EntityMapping<T> get(Class<T> entityType) {
+        return (EntityMapping<T>) mappings.get(entityType);
+    }
+
+    /**
+     * Gets the mapping for an entity type, failing if none is registered.
+     *
+     * @param <T> the entity type
+     * @param entityType the class of the entity
+     * @return the mapping
+     * @throws IllegalArgumentException if no mapping is registered
+     */
+    public <T> EntityMapping<T> require(Class<T> entityType) {
+        EntityMapping<T> mapping = get(entityType);
+        if (mapping == null) {
+            throw new IllegalArgumentException("No entity mapping registered for "
+                    + (entityType != null ? entityType.getName() : "null"));
+        }
+        return mapping;
+    }
+
+    /**
+     * Reads the primary identifier of an entity using the mapping for its type.
+     *
+     * @param <T> the entity type
+     * @param entityType the class of the entity
+     * @param entity the entity
+     * @return the id, or null if no mapping is registered or the entity is null
+     */
+    public <T> String idOf(Class<T> entityType, T entity) {
+        EntityMapping<T> mapping = get(entityType);
+        return mapping != null ? mapping.idOf(entity) : null;
+    }
+
+    /**
+     * Reads the parent identifier of an entity using the mapping for its type.
+     *
+     * @param <T> the entity type
+     * @param entityType the class of the entity
+     * @param entity the entity
+     * @return the parent id, or null if unmapped
+     */
+    public <T> String parentIdOf(Class<T> entityType, T entity) {
+        EntityMapping<T> mapping = get(entityType);
+        return mapping != null ? mapping.parentIdOf(entity) : null;
+    }
+}
@@ -0,0 +1,373 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Scatter-gather query over many parent or context ids. One sub-query is run
+ * per id, at most {@code concurrency} at a time, and the results are merged
+ * into a single {@link QueryOperation.Response}.
+ * <p>
+ * Without an ordering, results keep the order of the ids. With an ordering
+ * they are sorted; with an ordering and a limit, each worker keeps only its
+ * best {@code limit} entities in a bounded heap, so memory stays proportional
+ * to the limit rather than to the total number of matches. Count and exists
+ * queries add up the shard counts; an exists query stops starting shards once
+ * one of them matched, and its merged count is 1 or 0.
+ * <p>
+ * Sub-queries run on executor threads, which do not see the caller's
+ * thread-bound context. The caller's {@link Tracer#current() trace context} is
+ * set on each sub-query, before the template runs, so the handler can pick it
+ * up from the request. {@link OperationStats#current()} is not carried over:
+ * stats collected on the calling thread do not include the shards' lookups.
+ * <p>
+ * A shard that throws or answers with a failure status does not fail the
+ * whole query. The response then holds the results of the other shards and a
+ * {@link FanOutResult} listing the failed shards. Only when every shard failed
+ * is the response itself a failure. Fan-out queries are immutable and can be
+ * executed any number of times, from any thread.
+ *
+ * @param <T> the entity type
+ */
+public class FanOutQuery<T> {
+
+    /**
+     * The request field that each shard id is set on.
+     */
+    public enum ShardKey {
+        /** Shard ids are parent ids */
+        PARENT,
+        /** Shard ids are context ids */
+        CONTEXT
+    }
+
+    /**
+     * Builder for constructing fan-out queries.
+     *
+     * @param <BT> the entity type
+     */
+    public static class Builder<BT> {
+
+        private final Class<BT> entityType;
+        private List<String> shardIds = Collections.emptyList();
+        private ShardKey shardKey = ShardKey.PARENT;
+        private Consumer<QueryOperation.Request.Builder<BT>> template;
+        private Comparator<? super BT> ordering;
+        private int limit = -1;
+        private int concurrency = 8;
+        private Executor executor;
+
+        /**
+         * Creates a new builder.
+         *
+         * @param entityType the entity type to query
+         */
+        public Builder(Class<BT> entityType) {
+            this.entityType = entityType;
+        }
+
+        /**
+         * Runs one sub-query per parent id. Replaces any ids set before.
+         *
+         * @param parentIds the parent ids
+         * @return this builder
+         */
+        public Builder<BT> parentIds(Collection<String> parentIds) {
+            this.shardIds = new ArrayList<>(parentIds);
+            this.shardKey = ShardKey.PARENT;
+            return this;
+        }
+
+        /**
+         * Runs one sub-query per context id. Replaces any ids set before.
+         *
+         * @param contextIds the context ids
+         * @return this builder
+         */
+        public Builder<BT> contextIds(Collection<String> contextIds) {
+            this.shardIds = new ArrayList<>(contextIds);
+            this.shardKey = ShardKey.CONTEXT;
+            return this;
+        }
+
+        /**
+         * Sets the fields shared by every sub-query, such as a context id,
+         * count mode or trace context. It is applied to a fresh request
+         * builder per shard before the shard id is set.
+         *
+         * @param template configures each sub-query builder
+         * @return this builder
+         */
+        public Builder<BT> template(Consumer<QueryOperation.Request.Builder<BT>> template) {
+            this.template = template;
+            return this;
+        }
+
+        /**
+         * Sorts the merged results.
+         *
+         * @param ordering the result order
+         * @return this builder
+         */
+        public Builder<BT> orderBy(Comparator<? super BT> ordering) {
+            this.ordering = ordering;
+            return this;
+        }
+
+        /**
+         * Caps the number of merged results. With an ordering these are the
+         * first {@code limit} in that order; without one, the first in id order.
+         *
+         * @param limit the maximum result count
+         * @return this builder
+         */
+        public Builder<BT> limit(int limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("limit must not be negative: " + limit);
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of sub-queries running at once. Defaults to 8.
+         *
+         * @param concurrency the parallelism limit
+         * @return this builder
+         */
+        public Builder<BT> concurrency(int concurrency) {
+            if (concurrency < 1) {
+                throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+            }
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * Sets the executor that runs the sub-queries. Defaults to the common
+         * fork/join pool; pass a dedicated pool when the handler blocks on I/O.
+         *
+         * @param executor the executor
+         * @return this builder
+         */
+        public Builder<BT> executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Builds the fan-out query.
+         *
+         * @return the constructed query
+         */
+        public FanOutQuery<BT> build() {
+            return new FanOutQuery<>(this);
+        }
+    }
+
+    private final Class<T> entityType;
+    private final List<String> shardIds;
+    private final ShardKey shardKey;
+    private final Consumer<QueryOperation.Request.Builder<T>> template;
+    private final Comparator<? super T> ordering;
+    private final int limit;
+    private final int concurrency;
+    private final Executor executor;
+    private final boolean countOnly;
+    private final boolean existsOnly;
+
+    private FanOutQuery(Builder<T> builder) {
+        this.entityType = builder.entityType;
+        this.shardIds = builder.shardIds;
+        this.shardKey = builder.shardKey;
+        this.template = builder.template;
+        this.ordering = builder.ordering;
+        this.limit = builder.limit;
+        this.concurrency = builder.concurrency;
+        this.executor = builder.executor != null ? builder.executor : ForkJoinPool.commonPool();
+        QueryOperation.Request<T> probe = requestFor("");
+        this.countOnly = probe.isCountOnly();
+        this.existsOnly = probe.getMode() == QueryOperation.Mode.EXISTS;
+    }
+
+    /**
+     * Creates a builder for a fan-out query.
+     *
+     * @param entityType the entity type to query
+     * @param <T> the entity type
+     * @return a new builder
+     */
+    public static <T> Builder<T> builder(Class<T> entityType) {
+        return new Builder<>(entityType);
+    }
+
+    /**
+     * Gets the sub-query for one shard.
+     *
+     * @param shardId the parent or context id
+     * @return the request for that shard
+     */
+    public QueryOperation.Request<T> requestFor(String shardId) {
+        return requestFor(shardId, null);
+    }
+
+    private QueryOperation.Request<T> requestFor(String shardId, TraceContext trace) {
+        QueryOperation.Request.Builder<T> builder = OperationRequest.query(entityType);
+        if (trace != null) {
+            builder.trace(trace);
+        }
+        if (template != null) {
+            template.accept(builder);
+        }
+        if (shardKey == ShardKey.PARENT) {
+            builder.parentId(shardId);
+        } else {
+            builder.contextId(shardId);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Runs the sub-queries and waits for all of them.
+     *
+     * @param handler the handler to send the sub-queries to; it must be safe
+     *                to call from several threads
+     * @return the merged response
+     */
+    public QueryOperation.Response<T> execute(OperationHandler handler) {
+        Gather gather = new Gather(handler, Tracer.current());
+        int workers = Math.min(concurrency, shardIds.size());
+        List<CompletableFuture<Void>> running = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            running.add(CompletableFuture.runAsync(gather::work, executor));
+        }
+        CompletableFuture.allOf(running.toArray(new CompletableFuture<?>[0])).join();
+        return gather.merge();
+    }
+
+    /**
+     * State of one execution. Workers claim shards from a shared index and
+     * collect into their own buffers; only the final merge combines them.
+     */
+    private final class Gather {
+
+        private final OperationHandler handler;
+        private final TraceContext trace;
+        private final AtomicInteger nextShard = new AtomicInteger();
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicBoolean found = new AtomicBoolean();
+        private final ConcurrentLinkedQueue<FanOutResult.ShardFailure> failures = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<PriorityQueue<T>> heaps = new ConcurrentLinkedQueue<>();
+        private final AtomicReferenceArray<List<T>> shardResults = new AtomicReferenceArray<>(shardIds.size());
+
+        Gather(OperationHandler handler, TraceContext trace) {
+            this.handler = handler;
+            this.trace = trace;
+        }
+
+        private boolean boundedHeap() {
+            return ordering != null && limit >= 0 && !countOnly;
+        }
+
+        void work() {
+            PriorityQueue<T> heap = null;
+            if (boundedHeap()) {
+                // Reversed, so the head is the worst entity kept and is evicted first.
+                heap = new PriorityQueue<>(Math.max(1, limit + 1), Collections.reverseOrder(ordering));
+                heaps.add(heap);
+            }
+            int shard;
+            while ((shard = nextShard.getAndIncrement()) < shardIds.size()) {
+                if (existsOnly && found.get()) {
+                    return;
+                }
+                String shardId = shardIds.get(shard);
+                QueryOperation.Response<T> response;
+                try {
+                    response = handler.handle(requestFor(shardId, trace));
+                } catch (RuntimeException e) {
+                    failures.add(new FanOutResult.ShardFailure(shardId, String.valueOf(e.getMessage()), e));
+                    continue;
+                }
+                if (response == null || response.isFailure()) {
+                    String message = response != null ? response.getMessage() : "No response";
+                    failures.add(new FanOutResult.ShardFailure(shardId, message, null));
+                } else if (countOnly) {
+                    long shardCount = response.getCount();
+                    count.addAndGet(shardCount);
+                    if (shardCount > 0) {
+                        found.set(true);
+                    }
+                } else if (heap != null) {
+                    for (T entity : response.getResults()) {
+                        heap.offer(entity);
+                        if (heap.size() > limit) {
+                            heap.poll();
+                        }
+                    }
+                } else {
+                    shardResults.set(shard, response.getResults());
+                }
+            }
+        }
+
+        QueryOperation.Response<T> merge() {
+            List<FanOutResult.ShardFailure> failed = new ArrayList<>(failures);
+            if (!shardIds.isEmpty() && failed.size() == shardIds.size()) {
+                QueryOperation.Response<T> response = new QueryOperation.Response<>(OperationResponse.Status.FAILURE);
+                response.setMessage("All " + failed.size() + " shards failed: " + failed.get(0).getMessage());
+                response.addMetadata(new FanOutResult(shardIds.size(), failed));
+                return response;
+            }
+
+            QueryOperation.Response<T> response;
+            if (countOnly) {
+                // Shards that matched in parallel each report 1; exists answers 1 or 0.
+                long merged = existsOnly ? Math.min(count.get(), 1) : count.get();
+                response = new QueryOperation.Response<>(OperationResponse.Status.SUCCESS, merged);
+            } else {
+                response = new QueryOperation.Response<>(OperationResponse.Status.SUCCESS, mergeResults());
+            }
+            if (!failed.isEmpty()) {
+                response.addMetadata(new FanOutResult(shardIds.size(), failed));
+            }
+            return response;
+        }
+
+        private List<T> mergeResults() {
+            List<T> merged = new ArrayList<>();
+            if (boundedHeap()) {
+                for (PriorityQueue<T> heap : heaps) {
+                    merged.addAll(heap);
+                }
+            } else {
+                for (int i = 0; i < shardResults.length(); i++) {
+                    List<T> results = shardResults.get(i);
+                    if (results != null) {
+                        merged.addAll(results);
+                    }
+                }
+            }
+            if (ordering != null) {
+                merged.sort(ordering);
+            }
+            if (limit >= 0 && merged.size() > limit) {
+                return new ArrayList<>(merged.subList(0, limit));
+            }
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result metadata describing a fan-out query: how many shards were queried
+ * and which of them failed. A response carrying failures holds partial
+ * results, merged from the shards that succeeded.
+ */
+public class FanOutResult extends ResultMetadata {
+
+    /**
+     * A shard of a fan-out query that failed.
+     */
+    public static class ShardFailure {
+
+        private final String shardId;
+        private final String message;
+        private final Throwable cause;
+
+        /**
+         * Creates a shard failure.
+         *
+         * @param shardId the parent or context id of the shard
+         * @param message the failure message
+         * @param cause the exception thrown by the handler, or null if it
+         *              answered with a failure status
+         */
+        public ShardFailure(String shardId, String message, Throwable cause) {
+            this.shardId = shardId;
+            this.message = message;
+            this.cause = cause;
+        }
+
+        /**
+         * Gets the parent or context id of the shard.
+         *
+         * @return the shard id
+         */
+        public String getShardId() {
+            return shardId;
+        }
+
+        /**
+         * Gets the failure message.
+         *
+         * @return the message
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Gets the exception thrown by the handler.
+         *
+         * @return the cause, or null if the handler answered with a failure status
+         */
+        public Throwable getCause() {
+            return cause;
+        }
+    }
+
+    private final int shardCount;
+    private final List<ShardFailure> failures;
+
+    /**
+     * Default constructor for deserialization.
+     */
+    public FanOutResult() {
+        this.shardCount = 0;
+        this.failures = new ArrayList<>();
+    }
+
+    /**
+     * Creates fan-out metadata.
+     *
+     * @param shardCount the number of shards queried
+     * @param failures the shards that failed
+     */
+    public FanOutResult(int shardCount, List<ShardFailure> failures) {
+        super(failures.size() + " of " + shardCount + " shards failed");
+        this.shardCount = shardCount;
+        this.failures = Collections.unmodifiableList(new ArrayList<>(failures));
+    }
+
+    /**
+     * Gets the number of shards queried.
+     *
+     * @return the shard count
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Gets the shards that failed.
+     *
+     * @return the failures, empty if every shard succeeded
+     */
+    public List<ShardFailure> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Checks if some shards failed, so the results are incomplete.
+     *
+     * @return true if at least one shard failed
+     */
+    public boolean isPartial() {
+        return !failures.isEmpty();
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.larsderidder.requestbuilder;
+
+/**
+ * Handler that forwards every request to a delegate. Decorators extend this
+ * class and override only the operations they care about.
+ */
+public abstract class ForwardingOperationHandler implements OperationHandler {
+
+    private final OperationHandler delegate;
+
+    /**
+     * Creates a handler forwarding to the given delegate.
+     *
+     * @param delegate the handler to forward to
+     */
+    protected ForwardingOperationHandler(OperationHandler delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate must not be null");
+        }
+        this.delegate = delegate;
+    }
+
+    /**
+     * Gets the handler requests are forwarded to.
+     *
+     * @return the delegate
+     */
+    protected OperationHandler getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public <T> CreateOperation.Response<T> handle(CreateOperation.Request<T> request) {
+        return delegate.handle(request);
+    }
+
+    @Override
+    public <T> QueryOperation.Response<T> handle(QueryOperation.Request<T> request) {
+        return delegate.handle(request);
+    }
+
+    @Override
+    public <T> UpdateOperation.Response<T> handle(UpdateOperation.Request<T> request) {
+        return delegate.handle(request);
+    }
+
+    @Override
+    public <T> DeleteOperation.Response<T> handle(DeleteOperation.Request<T> request) {
+        return delegate.handle(request);
+    }
+}
@@ -0,0 +1,271 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Decorator that deduplicates creates and updates carrying an idempotency
+ * key. The first request with a key is forwarded; repeats of the key within
+ * the dedupe window get the original response without reaching the delegate.
+ * Repeats that arrive while the first is still in flight wait for it and
+ * share its response.
+ * <p>
+ * Keys are scoped per operation and entity type. Responses are remembered
+ * whatever their status, so a retry sees the same outcome as the original;
+ * only a request whose handling threw is forgotten, letting the retry run.
+ * The table holds at most {@code maxEntries} completed keys, evicting the
+ * oldest first. Each duplicate receives its own copy of the original
+ * response, sharing the entity and metadata instances but not the envelope.
+ */
+public class IdempotentHandler extends ForwardingOperationHandler {
+
+    /**
+     * Builder for constructing idempotent handlers.
+     */
+    public static class Builder {
+
+        private final OperationHandler delegate;
+        private long windowNanos = TimeUnit.MINUTES.toNanos(10);
+        private int maxEntries = 100_000;
+
+        /**
+         * Creates a new builder.
+         *
+         * @param delegate the handler to forward to
+         */
+        public Builder(OperationHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * Sets how long a completed key is remembered. Defaults to ten minutes.
+         *
+         * @param window the dedupe window
+         * @param unit the unit of the window
+         * @return this builder
+         */
+        public Builder window(long window, TimeUnit unit) {
+            this.windowNanos = unit.toNanos(window);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of remembered keys. Defaults to 100,000.
+         *
+         * @param maxEntries the key count
+         * @return this builder
+         */
+        public Builder maxEntries(int maxEntries) {
+            if (maxEntries < 1) {
+                throw new IllegalArgumentException("maxEntries must be positive");
+            }
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * Builds the handler.
+         *
+         * @return the constructed handler
+         */
+        public IdempotentHandler build() {
+            return new IdempotentHandler(this);
+        }
+    }
+
+    private static final class Key {
+        private final String operation;
+        private final Class<?> entityType;
+        private final String idempotencyKey;
+
+        Key(String operation, Class<?> entityType, String idempotencyKey) {
+            this.operation = operation;
+            this.entityType = entityType;
+            this.idempotencyKey = idempotencyKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return operation.equals(other.operation) && entityType == other.entityType
+                    && idempotencyKey.equals(other.idempotencyKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return (operation.hashCode() * 31 + System.identityHashCode(entityType)) * 31 + idempotencyKey.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        private final Key key;
+        private final CompletableFuture<OperationResponse> result = new CompletableFuture<>();
+        private volatile long expiresAtNanos = Long.MAX_VALUE;
+
+        Entry(Key key) {
+            this.key = key;
+        }
+
+        boolean isExpired(long now) {
+            return result.isDone() && now - expiresAtNanos >= 0;
+        }
+    }
+
+    private final long windowNanos;
+    private final int maxEntries;
+    private final ConcurrentHashMap<Key, Entry> table = new ConcurrentHashMap<>();
+    private final Queue<Entry> completionOrder = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final AtomicLong deduplicated = new AtomicLong();
+
+    private IdempotentHandler(Builder builder) {
+        super(builder.delegate);
+        this.windowNanos = builder.windowNanos;
+        this.maxEntries = builder.maxEntries;
+    }
+
+    /**
+     * Creates a builder for an idempotent handler.
+     *
+     * @param delegate the handler to forward to
+     * @return a new builder
+     */
+    public static Builder builder(OperationHandler delegate) {
+        return new Builder(delegate);
+    }
+
+    @Override
+    public <T> CreateOperation.Response<T> handle(CreateOperation.Request<T> request) {
+        if (!request.hasIdempotencyKey()) {
+            return getDelegate().handle(request);
+        }
+        return deduplicate(new Key(request.getOperationName(), request.getEntityType(), request.getIdempotencyKey()),
+                () -> getDelegate().handle(request),
+                original -> copyOf(original, new CreateOperation.Response<>(original.getStatus(),
+                        original.getEntity(), original.getMessage())));
+    }
+
+    @Override
+    public <T> UpdateOperation.Response<T> handle(UpdateOperation.Request<T> request) {
+        if (!request.hasIdempotencyKey()) {
+            return getDelegate().handle(request);
+        }
+        return deduplicate(new Key(request.getOperationName(), request.getEntityType(), request.getIdempotencyKey()),
+                () -> getDelegate().handle(request),
+                original -> copyOf(original, new UpdateOperation.Response<>(original.getStatus(), original.getMessage())));
+    }
+
+    /**
+     * Forwards the first request for a key and answers duplicates with copies
+     * of its response. The cached copy is taken as soon as the delegate
+     * returns, before callers such as a dispatcher add their own metadata,
+     * and every duplicate gets a fresh copy of it to mutate as it likes.
+     */
+    @SuppressWarnings("unchecked")
+    private <R extends OperationResponse> R deduplicate(Key key, Supplier<R> call, UnaryOperator<R> copier) {
+        Entry mine = new Entry(key);
+        while (true) {
+            Entry existing = table.putIfAbsent(key, mine);
+            if (existing == null) {
+                break;
+            }
+            if (existing.isExpired(System.nanoTime())) {
+                table.remove(key, existing);
+                continue;
+            }
+            try {
+                OperationResponse response = existing.result.join();
+                deduplicated.incrementAndGet();
+                OperationStats stats = OperationStats.current();
+                if (stats != null) {
+                    stats.setCacheResult(OperationStats.CacheResult.HIT);
+                }
+                return response != null ? copier.apply((R) response) : null;
+            } catch (CompletionException e) {
+                // The original attempt threw and was forgotten; try again.
+            }
+        }
+
+        R response;
+        try {
+            response = call.get();
+        } catch (RuntimeException | Error e) {
+            table.remove(key, mine);
+            mine.result.completeExceptionally(e);
+            throw e;
+        }
+        mine.expiresAtNanos = System.nanoTime() + windowNanos;
+        mine.result.complete(response != null ? copier.apply(response) : null);
+        completionOrder.add(mine);
+        evict();
+        return response;
+    }
+
+    private static <R extends OperationResponse> R copyOf(OperationResponse original, R copy) {
+        copy.setVersion(original.getVersion());
+        for (ResultMetadata metadata : original.getAllMetadata()) {
+            copy.addMetadata(metadata);
+        }
+        return copy;
+    }
+
+    /**
+     * Drops forgotten, expired and surplus entries from the head of the
+     * completion queue. Only completed entries are queued, so a request that
+     * is still in flight never holds back eviction of the keys behind it.
+     */
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            Entry oldest;
+            while ((oldest = completionOrder.peek()) != null) {
+                boolean forgotten = table.get(oldest.key) != oldest;
+                boolean evictable = table.size() > maxEntries || oldest.isExpired(now);
+                if (!forgotten && !evictable) {
+                    break;
+                }
+                completionOrder.poll();
+                if (!forgotten) {
+                    table.remove(oldest.key, oldest);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of requests answered from the dedupe table.
+     *
+     * @return the duplicate count
+     */
+    public long getDeduplicatedCount() {
+        return deduplicated.get();
+    }
+
+    /**
+     * Gets the number of keys currently remembered, including in-flight ones.
+     *
+     * @return the key count
+     */
+    public int size() {
+        return table.size();
+    }
+}
@@ -0,0 +1,223 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.UUID;
+
+/**
+ * Compact, immutable identifier for use as an id, parent id, reference id or
+ * context id. Non-negative decimal numbers and lowercase UUIDs are stored as
+ * primitives; anything else keeps its string. The hash code is computed once,
+ * and equality checks identity and hash before comparing contents, so
+ * identifiers make cheap map keys for caches, routers and stores.
+ * <p>
+ * Every identifier has exactly one string form: {@code Identifier.of("42")}
+ * equals {@code Identifier.of(42)}, while {@code "042"} stays a string id
+ * because it would not survive the round trip. Use an {@link IdentifierPool}
+ * to share one instance per distinct parent or context id.
+ */
+public final class Identifier {
+
+    private static final byte STRING = 0;
+    private static final byte NUMERIC = 1;
+    private static final byte UUID_KIND = 2;
+
+    private static final String MAX_LONG = Long.toString(Long.MAX_VALUE);
+
+    private final byte kind;
+    private final long high;
+    private final long low;
+    private final int hash;
+    private String text;
+
+    private Identifier(byte kind, long high, long low, String text) {
+        this.kind = kind;
+        this.high = high;
+        this.low = low;
+        this.text = text;
+        this.hash = kind == STRING ? mix(text.hashCode()) : mix(Long.hashCode(high) * 31 + Long.hashCode(low) + kind);
+    }
+
+    /**
+     * Creates an identifier from its string form, storing numeric and UUID ids
+     * as primitives.
+     *
+     * @param id the identifier string
+     * @return the identifier, or null if {@code id} is null
+     */
+    public static Identifier of(String id) {
+        if (id == null) {
+            return null;
+        }
+        if (isCanonicalNumber(id)) {
+            return new Identifier(NUMERIC, 0, parseNumber(id), id);
+        }
+        if (isCanonicalUuid(id)) {
+            return new Identifier(UUID_KIND, parseHex(id, 0, 8) << 32 | parseHex(id, 9, 13) << 16 | parseHex(id, 14, 18),
+                    parseHex(id, 19, 23) << 48 | parseHex(id, 24, 36), id);
+        }
+        return new Identifier(STRING, 0, 0, id);
+    }
+
+    /**
+     * Creates a numeric identifier.
+     *
+     * @param id the identifier, not negative
+     * @return the identifier
+     */
+    public static Identifier of(long id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Numeric identifiers must not be negative: " + id);
+        }
+        return new Identifier(NUMERIC, 0, id, null);
+    }
+
+    /**
+     * Creates a UUID identifier.
+     *
+     * @param id the identifier
+     * @return the identifier, or null if {@code id} is null
+     */
+    public static Identifier of(UUID id) {
+        if (id == null) {
+            return null;
+        }
+        return new Identifier(UUID_KIND, id.getMostSignificantBits(), id.getLeastSignificantBits(), null);
+    }
+
+    /**
+     * Checks if this identifier is stored as a number.
+     *
+     * @return true for numeric identifiers
+     */
+    public boolean isNumeric() {
+        return kind == NUMERIC;
+    }
+
+    /**
+     * Checks if this identifier is stored as a UUID.
+     *
+     * @return true for UUID identifiers
+     */
+    public boolean isUuid() {
+        return kind == UUID_KIND;
+    }
+
+    /**
+     * Gets the value of a numeric identifier.
+     *
+     * @return the number
+     * @throws IllegalStateException if the identifier is not numeric
+     */
+    public long longValue() {
+        if (kind != NUMERIC) {
+            throw new IllegalStateException("Not a numeric identifier: " + this);
+        }
+        return low;
+    }
+
+    /**
+     * Gets the value of a UUID identifier.
+     *
+     * @return the UUID
+     * @throws IllegalStateException if the identifier is not a UUID
+     */
+    public UUID uuidValue() {
+        if (kind != UUID_KIND) {
+            throw new IllegalStateException("Not a UUID identifier: " + this);
+        }
+        return new UUID(high, low);
+    }
+
+    boolean isEmpty() {
+        return kind == STRING && text.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Identifier)) {
+            return false;
+        }
+        Identifier other = (Identifier) o;
+        if (hash != other.hash || kind != other.kind) {
+            return false;
+        }
+        return kind == STRING ? text.equals(other.text) : high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Gets the string form. For numeric and UUID identifiers it is built on
+     * first use and then cached.
+     *
+     * @return the identifier string
+     */
+    @Override
+    public String toString() {
+        String result = text;
+        if (result == null) {
+            // Racy but safe: every thread computes the same immutable string.
+            result = kind == NUMERIC ? Long.toString(low) : new UUID(high, low).toString();
+            text = result;
+        }
+        return result;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean isCanonicalNumber(String id) {
+        int length = id.length();
+        if (length == 0 || length > MAX_LONG.length() || (length > 1 && id.charAt(0) == '0')) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return length < MAX_LONG.length() || id.compareTo(MAX_LONG) <= 0;
+    }
+
+    private static long parseNumber(String id) {
+        long value = 0;
+        for (int i = 0; i < id.length(); i++) {
+            value = value * 10 + (id.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static boolean isCanonicalUuid(String id) {
+        if (id.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseHex(String id, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char c = id.charAt(i);
+            value = value << 4 | (c <= '9' ? c - '0' : c - 'a' + 10);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interning pool that hands out one shared {@link Identifier} instance per
+ * distinct id, so ids repeated across many requests, such as parent and
+ * context ids, take memory once and compare by identity. The pool is
+ * thread-safe and bounded: once full, ids not yet pooled are returned as new
+ * instances rather than added.
+ */
+public class IdentifierPool {
+
+    private final ConcurrentHashMap<Identifier, Identifier> pool = new ConcurrentHashMap<>();
+    /** Pooled identifiers by the strings they were interned from, so string lookups need not parse */
+    private final ConcurrentHashMap<String, Identifier> byText = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxSize the maximum number of distinct identifiers to keep
+     */
+    public IdentifierPool(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets the shared identifier for an id string. Looking up an id that was
+     * already interned as a string does not allocate.
+     *
+     * @param id the identifier string
+     * @return the shared identifier, or null if {@code id} is null
+     */
+    public Identifier intern(String id) {
+        if (id == null) {
+            return null;
+        }
+        Identifier existing = byText.get(id);
+        if (existing != null) {
+            return existing;
+        }
+        Identifier shared = intern(Identifier.of(id));
+        if (pool.get(shared) == shared) {
+            byText.putIfAbsent(id, shared);
+        }
+        return shared;
+    }
+
+    /**
+     * Gets the shared instance equal to an identifier. The lookup uses the
+     * identifier's cached hash, so numeric and UUID identifiers are never
+     * turned into strings.
+     *
+     * @param id the identifier
+     * @return the shared identifier, or null if {@code id} is null
+     */
+    public Identifier intern(Identifier id) {
+        if (id == null) {
+            return null;
+        }
+        Identifier existing = pool.get(id);
+        if (existing != null) {
+            return existing;
+        }
+        if (pool.size() >= maxSize) {
+            return id;
+        }
+        Identifier raced = pool.putIfAbsent(id, id);
+        return raced != null ? raced : id;
+    }
+
+    /**
+     * Gets the number of pooled identifiers.
+     *
+     * @return the pool size
+     */
+    public int size() {
+        return pool.size();
+    }
+}
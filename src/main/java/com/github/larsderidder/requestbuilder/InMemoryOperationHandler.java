@@ -0,0 +1,661 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Handler that keeps entities in memory, for tests, tools and small
+ * single-process deployments.
+ * <p>
+ * Each entity type needs an {@link EntityMapping} with at least an id
+ * accessor. Entities are stored by reference and must not be mutated after
+ * they have been handed to the handler. Every write assigns a new version,
+ * unique within the entity type, which is honoured by {@code ifVersion} and
+ * {@code ifNoneMatch}. Queries that are not by id report the version of the
+ * whole entity type as their version.
+ * <p>
+ * Entities are indexed by parent ID, so queries by parent and bulk deletes by
+ * parent do not scan the type. Writes to one entity type are serialized; reads
+ * never block. Query results are read-only: a single hit is an immutable
+ * singleton list and an empty answer shares one immutable empty list.
+ * <p>
+ * {@link #openSnapshot()} gives a consistent view across queries and entity
+ * types: queries carrying its token read each entity as it was when the
+ * snapshot was opened. While any snapshot is open, writes keep the versions
+ * they replace and deletes leave tombstones; closing the last snapshot that
+ * could see an old version discards it. Snapshot reads never block writers.
+ * Opening and closing a snapshot briefly waits for writes in progress.
+ * Queries at a snapshot that are not by id report no version and ignore
+ * {@code ifNoneMatch}.
+ */
+public class InMemoryOperationHandler implements OperationHandler {
+
+    private static final class Row {
+        private final Object entity;
+        private final long version;
+        private final long commit;
+        private final boolean deleted;
+        private volatile Row previous;
+
+        Row(Object entity, long version, long commit, Row previous) {
+            this(entity, version, commit, previous, false);
+        }
+
+        Row(Object entity, long version, long commit, Row previous, boolean deleted) {
+            this.entity = entity;
+            this.version = version;
+            this.commit = commit;
+            this.previous = previous;
+            this.deleted = deleted;
+        }
+    }
+
+    private static final class Table {
+        private final ConcurrentMap<String, Row> rows = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, Set<String>> byParent = new ConcurrentHashMap<>();
+        private volatile long version;
+        /** Tombstones of entities deleted while snapshots were open, by id */
+        private final ConcurrentMap<String, Row> graveyard = new ConcurrentHashMap<>();
+        /** Ids that left a parent while snapshots were open, by former parent */
+        private final ConcurrentMap<String, Set<String>> formerChildren = new ConcurrentHashMap<>();
+        /** Ids with retained old versions, with the parents they left */
+        private final ConcurrentMap<String, Set<String>> history = new ConcurrentHashMap<>();
+
+        long nextVersion() {
+            return ++version;
+        }
+
+        void index(String parentId, String id) {
+            if (parentId != null) {
+                byParent.computeIfAbsent(parentId, key -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+        }
+
+        void unindex(String parentId, String id) {
+            if (parentId != null) {
+                Set<String> children = byParent.get(parentId);
+                if (children != null) {
+                    children.remove(id);
+                    if (children.isEmpty()) {
+                        byParent.remove(parentId, children);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Removes an id from the live parent index. With snapshots open, it is
+         * first remembered under the parent it left, so snapshot reads by that
+         * parent still find it.
+         */
+        void retire(String parentId, String id, boolean keepHistory) {
+            if (keepHistory) {
+                Set<String> leftParents = history.computeIfAbsent(id, key -> ConcurrentHashMap.newKeySet());
+                if (parentId != null) {
+                    leftParents.add(parentId);
+                    formerChildren.computeIfAbsent(parentId, key -> ConcurrentHashMap.newKeySet()).add(id);
+                }
+            }
+            unindex(parentId, id);
+        }
+    }
+
+    private final EntityMappings mappings;
+    private final ConcurrentMap<Class<?>, Table> tables = new ConcurrentHashMap<>();
+    private final AtomicLong commits = new AtomicLong();
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private final TreeMap<Long, Integer> openSnapshots = new TreeMap<>();
+    private volatile boolean keepHistory;
+
+    /**
+     * Creates an empty handler.
+     *
+     * @param mappings the entity mappings used to read identifiers
+     */
+    public InMemoryOperationHandler(EntityMappings mappings) {
+        this.mappings = mappings != null ? mappings : new EntityMappings();
+    }
+
+    private Table table(Class<?> entityType) {
+        return tables.computeIfAbsent(entityType, type -> new Table());
+    }
+
+    /**
+     * Gets the number of stored entities of a type.
+     *
+     * @param entityType the class of the entity
+     * @return the entity count
+     */
+    public int size(Class<?> entityType) {
+        Table table = tables.get(entityType);
+        return table != null ? table.rows.size() : 0;
+    }
+
+    /**
+     * Opens a snapshot of the current state of every entity type. Pass its
+     * token to queries with {@code snapshot(...)}, and close it when done.
+     *
+     * @return the open snapshot
+     */
+    public Snapshot openSnapshot() {
+        long sequence;
+        snapshotLock.writeLock().lock();
+        try {
+            sequence = commits.get();
+            synchronized (openSnapshots) {
+                Integer open = openSnapshots.get(sequence);
+                openSnapshots.put(sequence, open != null ? open + 1 : 1);
+            }
+            keepHistory = true;
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+        return new Snapshot(Long.toString(sequence), () -> closeSnapshot(sequence));
+    }
+
+    /**
+     * Gets the number of entities with old versions or tombstones kept for
+     * open snapshots.
+     *
+     * @param entityType the class of the entity
+     * @return the count of entities with retained history
+     */
+    public int retainedCount(Class<?> entityType) {
+        Table table = tables.get(entityType);
+        return table != null ? table.history.size() : 0;
+    }
+
+    private void closeSnapshot(long sequence) {
+        long horizon;
+        snapshotLock.writeLock().lock();
+        try {
+            synchronized (openSnapshots) {
+                Integer open = openSnapshots.get(sequence);
+                if (open == null || open == 1) {
+                    openSnapshots.remove(sequence);
+                } else {
+                    openSnapshots.put(sequence, open - 1);
+                }
+                keepHistory = !openSnapshots.isEmpty();
+                // Snapshots opened from here on start at or after the current commit.
+                horizon = keepHistory ? openSnapshots.firstKey() : commits.get();
+            }
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+        for (Table table : tables.values()) {
+            for (String id : table.history.keySet()) {
+                synchronized (table) {
+                    prune(table, id, horizon);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the versions of an entity that no snapshot at or after the horizon
+     * can see. Called with the table lock held.
+     */
+    private static void prune(Table table, String id, long horizon) {
+        Row live = table.rows.get(id);
+        Row tombstone = table.graveyard.get(id);
+        Row head = live != null ? live : tombstone;
+        Row visible = head;
+        while (visible != null && visible.commit > horizon && visible.previous != null) {
+            visible = visible.previous;
+        }
+        if (visible != null) {
+            visible.previous = null;
+        }
+        if (tombstone != null && (live == null ? visible == tombstone : !reachable(live, tombstone))) {
+            // Deleted for every remaining snapshot, or no longer on the chain of a re-created entity.
+            table.graveyard.remove(id, tombstone);
+            tombstone = null;
+        }
+        boolean gone = live == null && tombstone == null;
+        if (gone || (tombstone == null && live.previous == null)) {
+            Set<String> leftParents = table.history.remove(id);
+            if (leftParents != null) {
+                for (String parentId : leftParents) {
+                    Set<String> former = table.formerChildren.get(parentId);
+                    if (former != null) {
+                        former.remove(id);
+                        if (former.isEmpty()) {
+                            table.formerChildren.remove(parentId, former);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean reachable(Row head, Row target) {
+        for (Row row = head; row != null; row = row.previous) {
+            if (row == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Long openSequence(String token) {
+        long sequence;
+        try {
+            sequence = Long.parseLong(token);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        synchronized (openSnapshots) {
+            return openSnapshots.containsKey(sequence) ? sequence : null;
+        }
+    }
+
+    @Override
+    public <T> CreateOperation.Response<T> handle(CreateOperation.Request<T> request) {
+        EntityMapping<T> mapping = mappings.get(request.getEntityType());
+        T entity = request.getEntity();
+        String id = mapping != null ? mapping.idOf(entity) : null;
+        if (id == null) {
+            return new CreateOperation.Response<>(OperationResponse.Status.FAILURE, "Entity has no id");
+        }
+        Table table = table(request.getEntityType());
+        long version;
+        snapshotLock.readLock().lock();
+        try {
+            synchronized (table) {
+                if (table.rows.containsKey(id)) {
+                    return new CreateOperation.Response<>(OperationResponse.Status.FAILURE,
+                            "Entity already exists: " + id);
+                }
+                version = table.nextVersion();
+                boolean keep = keepHistory;
+                Row tombstone = table.graveyard.get(id);
+                table.rows.put(id, new Row(entity, version, commits.incrementAndGet(), keep ? tombstone : null));
+                // With snapshots open the tombstone stays buried until pruned, so a
+                // reader that misses the new row still finds the old chain.
+                if (!keep && tombstone != null) {
+                    table.graveyard.remove(id, tombstone);
+                }
+                table.index(mapping.parentIdOf(entity), id);
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        CreateOperation.Response<T> response = new CreateOperation.Response<>(OperationResponse.Status.SUCCESS, entity);
+        response.setVersion(Long.toString(version));
+        return response;
+    }
+
+    @Override
+    public <T> QueryOperation.Response<T> handle(QueryOperation.Request<T> request) {
+        Table table = table(request.getEntityType());
+        EntityMapping<T> mapping = mappings.get(request.getEntityType());
+        OperationStats stats = OperationStats.current();
+        if (request.hasSnapshot()) {
+            Long sequence = openSequence(request.getSnapshot());
+            if (sequence == null) {
+                return failure(QueryOperation.Response.<T>empty(OperationResponse.Status.FAILURE),
+                        "Snapshot is not open: " + request.getSnapshot());
+            }
+            long start = stats != null ? System.nanoTime() : 0;
+            QueryOperation.Response<T> response = queryAt(table, mapping, request, sequence, stats);
+            if (stats != null) {
+                stats.record(OperationStats.Stage.LOOKUP, System.nanoTime() - start);
+            }
+            return response;
+        }
+        if (stats == null) {
+            return request.isCountOnly() ? count(table, mapping, request, null) : query(table, mapping, request, null);
+        }
+        long start = System.nanoTime();
+        QueryOperation.Response<T> response = request.isCountOnly()
+                ? count(table, mapping, request, stats) : query(table, mapping, request, stats);
+        stats.record(OperationStats.Stage.LOOKUP, System.nanoTime() - start);
+        return response;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> QueryOperation.Response<T> query(Table table, EntityMapping<T> mapping,
+                                                 QueryOperation.Request<T> request, OperationStats stats) {
+        if (request.hasId()) {
+            Row row = table.rows.get(request.getId());
+            boolean found = row != null && matches(mapping, (T) row.entity, request);
+            if (stats != null) {
+                stats.addRows(row != null ? 1 : 0, found ? 1 : 0);
+            }
+            if (!found) {
+                return QueryOperation.Response.empty(OperationResponse.Status.SUCCESS);
+            }
+            return versioned(request, new QueryOperation.Response<>(OperationResponse.Status.SUCCESS,
+                    Collections.singletonList((T) row.entity)), row.version);
+        }
+
+        long version = table.version;
+        long scanned = 0;
+        List<T> results = null;
+        for (Row row : candidates(table, request)) {
+            scanned++;
+            if (row != null && matches(mapping, (T) row.entity, request)) {
+                if (results == null) {
+                    results = new ArrayList<>();
+                }
+                results.add((T) row.entity);
+            }
+        }
+        if (stats != null) {
+            stats.addRows(scanned, results != null ? results.size() : 0);
+        }
+        return versioned(request, results != null
+                ? new QueryOperation.Response<>(OperationResponse.Status.SUCCESS, results)
+                : QueryOperation.Response.<T>empty(OperationResponse.Status.SUCCESS), version);
+    }
+
+    /**
+     * Answers count and exists queries. Lookups by id and by parent alone are
+     * answered from the row map and parent index without touching entities;
+     * other filters are evaluated without collecting results, and exists
+     * queries stop at the first match.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> QueryOperation.Response<T> count(Table table, EntityMapping<T> mapping,
+                                                 QueryOperation.Request<T> request, OperationStats stats) {
+        long version = table.version;
+        boolean filtered = request.getReferenceId() != null || request.hasContextId();
+        long scanned = 0;
+        long count;
+        if (request.hasId()) {
+            Row row = table.rows.get(request.getId());
+            scanned = row != null ? 1 : 0;
+            count = row != null && matches(mapping, (T) row.entity, request) ? 1 : 0;
+        } else if (!filtered && request.getParentId() != null) {
+            Set<String> children = table.byParent.get(request.getParentId());
+            count = children != null ? children.size() : 0;
+        } else if (!filtered) {
+            count = table.rows.size();
+        } else {
+            boolean stopAtFirst = request.getMode() == QueryOperation.Mode.EXISTS;
+            count = 0;
+            for (Row row : candidates(table, request)) {
+                scanned++;
+                if (row != null && matches(mapping, (T) row.entity, request)) {
+                    count++;
+                    if (stopAtFirst) {
+                        break;
+                    }
+                }
+            }
+        }
+        if (request.getMode() == QueryOperation.Mode.EXISTS) {
+            count = Math.min(count, 1);
+        }
+        if (stats != null) {
+            stats.addRows(scanned, 0);
+        }
+        return versioned(request, new QueryOperation.Response<>(OperationResponse.Status.SUCCESS, count), version);
+    }
+
+    /**
+     * Answers a query as of a snapshot. Candidates are the live index plus the
+     * ids that left it while snapshots were open; each is resolved to the
+     * version visible at the snapshot before filtering.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> QueryOperation.Response<T> queryAt(Table table, EntityMapping<T> mapping,
+                                                   QueryOperation.Request<T> request, long sequence,
+                                                   OperationStats stats) {
+        if (request.hasId()) {
+            Row row = visible(table, request.getId(), sequence);
+            boolean found = row != null && matches(mapping, (T) row.entity, request);
+            if (stats != null) {
+                stats.addRows(row != null ? 1 : 0, found && !request.isCountOnly() ? 1 : 0);
+            }
+            if (request.isCountOnly()) {
+                return new QueryOperation.Response<>(OperationResponse.Status.SUCCESS, found ? 1 : 0);
+            }
+            if (!found) {
+                return QueryOperation.Response.empty(OperationResponse.Status.SUCCESS);
+            }
+            return versioned(request, new QueryOperation.Response<>(OperationResponse.Status.SUCCESS,
+                    Collections.singletonList((T) row.entity)), row.version);
+        }
+
+        Set<String> ids = new HashSet<>();
+        if (request.getParentId() == null) {
+            ids.addAll(table.rows.keySet());
+            ids.addAll(table.graveyard.keySet());
+        } else {
+            addAll(ids, table.byParent.get(request.getParentId()));
+            addAll(ids, table.formerChildren.get(request.getParentId()));
+        }
+        boolean stopAtFirst = request.getMode() == QueryOperation.Mode.EXISTS;
+        long scanned = 0;
+        long count = 0;
+        List<T> results = null;
+        for (String id : ids) {
+            Row row = visible(table, id, sequence);
+            scanned++;
+            if (row == null || !matches(mapping, (T) row.entity, request)) {
+                continue;
+            }
+            count++;
+            if (request.isCountOnly()) {
+                if (stopAtFirst) {
+                    break;
+                }
+                continue;
+            }
+            if (results == null) {
+                results = new ArrayList<>();
+            }
+            results.add((T) row.entity);
+        }
+        if (stats != null) {
+            stats.addRows(scanned, results != null ? results.size() : 0);
+        }
+        if (request.isCountOnly()) {
+            return new QueryOperation.Response<>(OperationResponse.Status.SUCCESS, count);
+        }
+        return results != null
+                ? new QueryOperation.Response<>(OperationResponse.Status.SUCCESS, results)
+                : QueryOperation.Response.<T>empty(OperationResponse.Status.SUCCESS);
+    }
+
+    /**
+     * Finds the version of an entity visible at a snapshot: the newest one
+     * committed at or before it, unless that is a tombstone.
+     */
+    private static Row visible(Table table, String id, long sequence) {
+        Row row = table.rows.get(id);
+        if (row == null) {
+            row = table.graveyard.get(id);
+        }
+        while (row != null && row.commit > sequence) {
+            row = row.previous;
+        }
+        return row != null && !row.deleted ? row : null;
+    }
+
+    private static void addAll(Set<String> target, Set<String> source) {
+        if (source != null) {
+            target.addAll(source);
+        }
+    }
+
+    private static <R extends OperationResponse> R failure(R response, String message) {
+        response.setMessage(message);
+        return response;
+    }
+
+    private static Iterable<Row> candidates(Table table, QueryOperation.Request<?> request) {
+        if (request.getParentId() == null) {
+            return table.rows.values();
+        }
+        Set<String> children = table.byParent.get(request.getParentId());
+        if (children == null) {
+            return Collections.emptyList();
+        }
+        List<Row> rows = new ArrayList<>(children.size());
+        for (String id : children) {
+            rows.add(table.rows.get(id));
+        }
+        return rows;
+    }
+
+    private static <T> QueryOperation.Response<T> versioned(QueryOperation.Request<T> request,
+                                                           QueryOperation.Response<T> response, long version) {
+        String etag = Long.toString(version);
+        if (request.hasIfNoneMatch() && etag.equals(request.getIfNoneMatch())) {
+            response = QueryOperation.Response.empty(OperationResponse.Status.NOT_MODIFIED);
+        }
+        response.setVersion(etag);
+        return response;
+    }
+
+    private static <T> boolean matches(EntityMapping<T> mapping, T entity, QueryOperation.Request<T> request) {
+        if (mapping == null) {
+            return !request.hasId() && request.getParentId() == null
+                    && request.getReferenceId() == null && !request.hasContextId();
+        }
+        return (request.getParentId() == null || request.getParentId().equals(mapping.parentIdOf(entity)))
+                && (request.getReferenceId() == null || request.getReferenceId().equals(mapping.referenceIdOf(entity)))
+                && (!request.hasContextId() || request.getContextId().equals(mapping.contextIdOf(entity)));
+    }
+
+    @Override
+    public <T> UpdateOperation.Response<T> handle(UpdateOperation.Request<T> request) {
+        EntityMapping<T> mapping = mappings.get(request.getEntityType());
+        T entity = request.getEntity();
+        String id = mapping != null ? mapping.idOf(entity) : null;
+        if (id == null) {
+            return new UpdateOperation.Response<>(OperationResponse.Status.FAILURE, "Entity has no id");
+        }
+        Table table = table(request.getEntityType());
+        long version;
+        snapshotLock.readLock().lock();
+        try {
+            synchronized (table) {
+                Row current = table.rows.get(id);
+                if (current == null) {
+                    return new UpdateOperation.Response<>(OperationResponse.Status.FAILURE, "Entity not found: " + id);
+                }
+                if (request.hasIfVersion() && !request.getIfVersion().equals(Long.toString(current.version))) {
+                    return conflict(new UpdateOperation.Response<>(OperationResponse.Status.CONFLICT,
+                            "Expected version " + request.getIfVersion() + " but found " + current.version), current);
+                }
+                boolean keep = keepHistory;
+                version = table.nextVersion();
+                table.rows.put(id, new Row(entity, version, commits.incrementAndGet(), keep ? current : null));
+                @SuppressWarnings("unchecked")
+                String oldParentId = mapping.parentIdOf((T) current.entity);
+                String newParentId = mapping.parentIdOf(entity);
+                if (oldParentId == null ? newParentId != null : !oldParentId.equals(newParentId)) {
+                    table.index(newParentId, id);
+                    table.retire(oldParentId, id, keep);
+                } else if (keep) {
+                    table.history.computeIfAbsent(id, key -> ConcurrentHashMap.newKeySet());
+                }
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        UpdateOperation.Response<T> response = new UpdateOperation.Response<>(OperationResponse.Status.SUCCESS);
+        response.setVersion(Long.toString(version));
+        return response;
+    }
+
+    @Override
+    public <T> DeleteOperation.Response<T> handle(DeleteOperation.Request<T> request) {
+        if (request.isAllWithParent()) {
+            return deleteAllWithParent(request);
+        }
+        if (request.getId() == null) {
+            return new DeleteOperation.Response<>(OperationResponse.Status.FAILURE, "No id given");
+        }
+        EntityMapping<T> mapping = mappings.get(request.getEntityType());
+        Table table = table(request.getEntityType());
+        snapshotLock.readLock().lock();
+        try {
+            synchronized (table) {
+                Row current = table.rows.get(request.getId());
+                if (current == null) {
+                    return new DeleteOperation.Response<>(OperationResponse.Status.FAILURE,
+                            "Entity not found: " + request.getId());
+                }
+                if (request.hasIfVersion() && !request.getIfVersion().equals(Long.toString(current.version))) {
+                    return conflict(new DeleteOperation.Response<>(OperationResponse.Status.CONFLICT,
+                            "Expected version " + request.getIfVersion() + " but found " + current.version), current);
+                }
+                remove(table, mapping, request.getId(), current);
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        return new DeleteOperation.Response<>(OperationResponse.Status.SUCCESS, null, new AffectedRows(1));
+    }
+
+    private <T> DeleteOperation.Response<T> deleteAllWithParent(DeleteOperation.Request<T> request) {
+        Table table = table(request.getEntityType());
+        int maxRows = request.getMaxRows();
+        long deleted = 0;
+        boolean truncated = false;
+        EntityMapping<T> mapping = mappings.get(request.getEntityType());
+        snapshotLock.readLock().lock();
+        try {
+            synchronized (table) {
+                Set<String> children = table.byParent.get(request.getParentId());
+                if (children != null) {
+                    List<String> ids = new ArrayList<>(children);
+                    for (String id : ids) {
+                        if (maxRows > 0 && deleted == maxRows) {
+                            truncated = true;
+                            break;
+                        }
+                        Row current = table.rows.get(id);
+                        if (current != null) {
+                            remove(table, mapping, id, current);
+                            deleted++;
+                        }
+                    }
+                }
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        return new DeleteOperation.Response<>(OperationResponse.Status.SUCCESS, null,
+                new AffectedRows(deleted, truncated));
+    }
+
+    /**
+     * Removes a live entity, leaving a tombstone for open snapshots. Called
+     * with the snapshot read lock and the table lock held.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> void remove(Table table, EntityMapping<T> mapping, String id, Row current) {
+        long version = table.nextVersion();
+        boolean keep = keepHistory;
+        if (keep) {
+            // Bury before removing, so snapshot readers always find one of the two.
+            table.graveyard.put(id, new Row(null, version, commits.incrementAndGet(), current, true));
+        } else {
+            commits.incrementAndGet();
+        }
+        table.rows.remove(id);
+        String parentId = mapping != null ? mapping.parentIdOf((T) current.entity) : null;
+        table.retire(parentId, id, keep);
+    }
+
+    private static <R extends OperationResponse> R conflict(R response, Row current) {
+        response.setVersion(Long.toString(current.version));
+        return response;
+    }
+}
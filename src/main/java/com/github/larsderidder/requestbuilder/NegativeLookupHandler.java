@@ -0,0 +1,388 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decorator that answers id queries for ids that definitely do not exist
+ * without calling its delegate, using a {@link CountingBloomFilter} per entity
+ * type.
+ * <p>
+ * Each filter is built on first use from the delegate's entities, then kept
+ * up to date by creates (which add the id before they are forwarded, so a
+ * failed create only costs a false positive) and successful deletes (which
+ * remove it). Bulk deletes by parent leave their ids in the filter, which
+ * only costs false positives. Every query the filter lets through but the
+ * delegate answers empty counts as a false positive; when the observed
+ * false-positive rate drifts above twice the target, or the filter holds more
+ * ids than it was sized for, it is rebuilt from the delegate with room for
+ * twice the current ids.
+ * <p>
+ * Builds load every entity of the type, so they run on the builder's
+ * executor rather than the querying thread. Until the first build finishes,
+ * id queries go to the delegate; during a rebuild the previous filter keeps
+ * answering.
+ * <p>
+ * The handler fails open: when the delegate cannot list a type's entities,
+ * id queries for that type go straight to the delegate, using the previous
+ * filter if there is one, and the build is not retried until the rebuild
+ * back-off has passed.
+ * <p>
+ * All writes for filtered types must go through this handler; an entity
+ * created behind its back is invisible to id queries until the next rebuild.
+ */
+public class NegativeLookupHandler extends ForwardingOperationHandler {
+
+    /**
+     * Builder for constructing negative lookup handlers.
+     */
+    public static class Builder {
+
+        private final OperationHandler delegate;
+        private final EntityMappings mappings;
+        private final Map<Class<?>, Long> expectedInsertions = new HashMap<>();
+        private double falsePositiveRate = 0.01;
+        private long minSamples = 1000;
+        private long rebuildBackoffNanos = TimeUnit.SECONDS.toNanos(1);
+        private Executor executor;
+
+        /**
+         * Creates a new builder.
+         *
+         * @param delegate the handler to forward to
+         * @param mappings the entity mappings used to read ids
+         */
+        public Builder(OperationHandler delegate, EntityMappings mappings) {
+            this.delegate = delegate;
+            this.mappings = mappings;
+        }
+
+        /**
+         * Filters id queries for the given type.
+         *
+         * @param entityType the class of the entity
+         * @param expectedInsertions the initial number of ids to size for
+         * @return this builder
+         */
+        public Builder filter(Class<?> entityType, long expectedInsertions) {
+            this.expectedInsertions.put(entityType, expectedInsertions);
+            return this;
+        }
+
+        /**
+         * Sets the target false-positive probability. Defaults to 1%.
+         *
+         * @param falsePositiveRate the probability, between 0 and 1
+         * @return this builder
+         */
+        public Builder falsePositiveRate(double falsePositiveRate) {
+            this.falsePositiveRate = falsePositiveRate;
+            return this;
+        }
+
+        /**
+         * Sets how many lookups of absent ids are observed before the false
+         * positive rate is trusted enough to trigger a rebuild.
+         *
+         * @param minSamples the sample count
+         * @return this builder
+         */
+        public Builder minSamples(long minSamples) {
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * Sets how long to wait after a failed build before trying again.
+         * Defaults to one second.
+         *
+         * @param backoff the wait
+         * @param unit the unit of the wait
+         * @return this builder
+         */
+        public Builder rebuildBackoff(long backoff, TimeUnit unit) {
+            this.rebuildBackoffNanos = unit.toNanos(backoff);
+            return this;
+        }
+
+        /**
+         * Sets the executor that builds the filters. Defaults to the common
+         * fork/join pool; pass a dedicated pool when the delegate blocks on I/O.
+         *
+         * @param executor the executor
+         * @return this builder
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Builds the handler.
+         *
+         * @return the constructed handler
+         */
+        public NegativeLookupHandler build() {
+            return new NegativeLookupHandler(this);
+        }
+    }
+
+    private final class TypeFilter {
+        private final Class<?> entityType;
+        private volatile CountingBloomFilter filter;
+        private CountingBloomFilter building;
+        private final AtomicBoolean rebuilding = new AtomicBoolean();
+        private final AtomicLong filtered = new AtomicLong();
+        private final AtomicLong falsePositives = new AtomicLong();
+        private final AtomicLong rebuilds = new AtomicLong();
+        private final AtomicLong rebuildFailures = new AtomicLong();
+        private volatile long sizeHint;
+        private volatile boolean backingOff;
+        private volatile long retryAtNanos;
+
+        TypeFilter(Class<?> entityType, long expectedInsertions) {
+            this.entityType = entityType;
+            this.sizeHint = expectedInsertions;
+        }
+
+        synchronized void added(String id) {
+            if (filter != null) {
+                filter.add(id);
+            }
+            if (building != null) {
+                building.add(id);
+            }
+        }
+
+        synchronized void removed(String id) {
+            // Not removed from a filter being built: the scan may not have added it yet.
+            if (filter != null) {
+                filter.remove(id);
+            }
+        }
+
+        void rebuildIfNeeded() {
+            CountingBloomFilter current = filter;
+            if (current != null) {
+                long fp = falsePositives.get();
+                long absent = filtered.get() + fp;
+                boolean drifted = absent >= minSamples && fp > absent * falsePositiveRate * 2;
+                boolean full = current.size() > current.getExpectedInsertions();
+                if (!drifted && !full) {
+                    return;
+                }
+                sizeHint = Math.max(sizeHint, current.size() * 2);
+            }
+            if (backingOff && System.nanoTime() - retryAtNanos < 0) {
+                return;
+            }
+            if (!rebuilding.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                executor.execute(this::runRebuild);
+            } catch (RejectedExecutionException e) {
+                rebuilding.set(false);
+            }
+        }
+
+        private void runRebuild() {
+            try {
+                rebuild();
+                backingOff = false;
+            } catch (RuntimeException e) {
+                rebuildFailures.incrementAndGet();
+                retryAtNanos = System.nanoTime() + rebuildBackoffNanos;
+                backingOff = true;
+            } finally {
+                rebuilding.set(false);
+            }
+        }
+
+        private void rebuild() {
+            CountingBloomFilter next = new CountingBloomFilter(sizeHint, falsePositiveRate);
+            synchronized (this) {
+                building = next;
+            }
+            try {
+                scanInto(entityType, next);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    building = null;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                building = null;
+                filter = next;
+                filtered.set(0);
+                falsePositives.set(0);
+                rebuilds.incrementAndGet();
+            }
+        }
+    }
+
+    private final EntityMappings mappings;
+    private final double falsePositiveRate;
+    private final long minSamples;
+    private final long rebuildBackoffNanos;
+    private final Executor executor;
+    private final Map<Class<?>, TypeFilter> filters = new HashMap<>();
+
+    private NegativeLookupHandler(Builder builder) {
+        super(builder.delegate);
+        this.mappings = builder.mappings != null ? builder.mappings : new EntityMappings();
+        this.falsePositiveRate = builder.falsePositiveRate;
+        this.minSamples = builder.minSamples;
+        this.rebuildBackoffNanos = builder.rebuildBackoffNanos;
+        this.executor = builder.executor != null ? builder.executor : ForkJoinPool.commonPool();
+        for (Map.Entry<Class<?>, Long> entry : builder.expectedInsertions.entrySet()) {
+            filters.put(entry.getKey(), new TypeFilter(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Creates a builder for a negative lookup handler.
+     *
+     * @param delegate the handler to forward to
+     * @param mappings the entity mappings used to read ids
+     * @return a new builder
+     */
+    public static Builder builder(OperationHandler delegate, EntityMappings mappings) {
+        return new Builder(delegate, mappings);
+    }
+
+    private <T> void scanInto(Class<T> entityType, CountingBloomFilter target) {
+        EntityMapping<T> mapping = mappings.require(entityType);
+        QueryOperation.Response<T> all = getDelegate().handle(OperationRequest.query(entityType).build());
+        if (all == null || !all.isSuccess()) {
+            throw new IllegalStateException("Could not load " + entityType.getName() + " ids to build filter: "
+                    + (all != null ? all.getMessage() : "no response"));
+        }
+        for (T entity : all.getResults()) {
+            String id = mapping.idOf(entity);
+            if (id != null) {
+                target.add(id);
+            }
+        }
+    }
+
+    @Override
+    public <T> QueryOperation.Response<T> handle(QueryOperation.Request<T> request) {
+        // The filter tracks the latest state; a snapshot may still see deleted ids.
+        TypeFilter typeFilter = request.hasId() && !request.hasSnapshot() ? filters.get(request.getEntityType()) : null;
+        if (typeFilter == null) {
+            return getDelegate().handle(request);
+        }
+        typeFilter.rebuildIfNeeded();
+        CountingBloomFilter filter = typeFilter.filter;
+        OperationStats stats = OperationStats.current();
+        if (filter != null && !filter.mightContain(request.getId())) {
+            typeFilter.filtered.incrementAndGet();
+            if (stats != null) {
+                stats.setCacheResult(OperationStats.CacheResult.HIT);
+            }
+            return request.isCountOnly()
+                    ? new QueryOperation.Response<>(OperationResponse.Status.SUCCESS, 0L)
+                    : QueryOperation.Response.<T>empty(OperationResponse.Status.SUCCESS);
+        }
+        if (stats != null) {
+            stats.setCacheResult(OperationStats.CacheResult.MISS);
+        }
+        QueryOperation.Response<T> response = getDelegate().handle(request);
+        if (filter != null && response != null && response.isSuccess() && !response.exists()
+                && request.getParentId() == null && request.getReferenceId() == null && !request.hasContextId()) {
+            typeFilter.falsePositives.incrementAndGet();
+        }
+        return response;
+    }
+
+    @Override
+    public <T> CreateOperation.Response<T> handle(CreateOperation.Request<T> request) {
+        TypeFilter typeFilter = filters.get(request.getEntityType());
+        if (typeFilter == null) {
+            return getDelegate().handle(request);
+        }
+        // Added first: a reader reacting to the create must not be told the id is absent.
+        String id = request.getEntity() != null ? mappings.idOf(request.getEntityType(), request.getEntity()) : null;
+        if (id != null) {
+            typeFilter.added(id);
+        }
+        CreateOperation.Response<T> response = getDelegate().handle(request);
+        if (id == null && response != null && response.isSuccess() && response.getEntity() != null) {
+            String assigned = mappings.idOf(request.getEntityType(), response.getEntity());
+            if (assigned != null) {
+                typeFilter.added(assigned);
+            }
+        }
+        return response;
+    }
+
+    @Override
+    public <T> DeleteOperation.Response<T> handle(DeleteOperation.Request<T> request) {
+        DeleteOperation.Response<T> response = getDelegate().handle(request);
+        TypeFilter typeFilter = filters.get(request.getEntityType());
+        if (typeFilter != null && response != null && response.isSuccess()
+                && !request.isAllWithParent() && request.getId() != null) {
+            typeFilter.removed(request.getId());
+        }
+        return response;
+    }
+
+    /**
+     * Gets the number of id queries answered by the filter since its last rebuild.
+     *
+     * @param entityType the class of the entity
+     * @return the count, or 0 if the type is not filtered
+     */
+    public long getFilteredCount(Class<?> entityType) {
+        TypeFilter typeFilter = filters.get(entityType);
+        return typeFilter != null ? typeFilter.filtered.get() : 0;
+    }
+
+    /**
+     * Gets the observed false-positive rate since the last rebuild: the share
+     * of lookups for absent ids that the filter let through.
+     *
+     * @param entityType the class of the entity
+     * @return the rate, or 0 if nothing was observed
+     */
+    public double getObservedFalsePositiveRate(Class<?> entityType) {
+        TypeFilter typeFilter = filters.get(entityType);
+        if (typeFilter == null) {
+            return 0;
+        }
+        long fp = typeFilter.falsePositives.get();
+        long absent = typeFilter.filtered.get() + fp;
+        return absent == 0 ? 0 : (double) fp / absent;
+    }
+
+    /**
+     * Gets the number of times the filter for a type was built.
+     *
+     * @param entityType the class of the entity
+     * @return the build count, including the initial build
+     */
+    public long getRebuildCount(Class<?> entityType) {
+        TypeFilter typeFilter = filters.get(entityType);
+        return typeFilter != null ? typeFilter.rebuilds.get() : 0;
+    }
+
+    /**
+     * Gets the number of times building the filter for a type failed because
+     * the delegate could not list its entities.
+     *
+     * @param entityType the class of the entity
+     * @return the failure count, or 0 if the type is not filtered
+     */
+    public long getRebuildFailureCount(Class<?> entityType) {
+        TypeFilter typeFilter = filters.get(entityType);
+        return typeFilter != null ? typeFilter.rebuildFailures.get() : 0;
+    }
+}
@@ -0,0 +1,164 @@
+package com.github.larsderidder.requestbuilder;
+
+/**
+ * Entry point that routes requests of any operation type to an
+ * {@link OperationHandler}, for transports and tools that receive requests as
+ * plain {@link OperationRequest}s.
+ * <p>
+ * When stats collection is enabled the dispatcher attaches an
+ * {@link OperationStats} to every response, timing the handler and making the
+ * stats available to it through {@link OperationStats#current()}. When
+ * disabled, dispatching costs one branch on top of the handler call.
+ * <p>
+ * With a {@link Tracer} set, requests carrying a sampled {@link TraceContext}
+ * are handled inside a child span that is reported to the tracer when the
+ * handler returns. Unsampled and untraced requests take a single branch and
+ * allocate nothing for tracing.
+ */
+public class OperationDispatcher {
+
+    private final OperationHandler handler;
+    private volatile boolean collectStats;
+    private volatile Tracer tracer;
+
+    /**
+     * Creates a dispatcher with stats collection disabled.
+     *
+     * @param handler the handler to route requests to
+     */
+    public OperationDispatcher(OperationHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Enables or disables stats collection for subsequent requests.
+     *
+     * @param collectStats true to attach {@link OperationStats} to responses
+     */
+    public void setCollectStats(boolean collectStats) {
+        this.collectStats = collectStats;
+    }
+
+    /**
+     * Checks if stats are collected.
+     *
+     * @return true if enabled
+     */
+    public boolean isCollectStats() {
+        return collectStats;
+    }
+
+    /**
+     * Sets the tracer that receives spans for sampled requests.
+     *
+     * @param tracer the tracer, or null to disable tracing
+     */
+    public void setTracer(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Gets the tracer.
+     *
+     * @return the tracer, or null if tracing is disabled
+     */
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Gets the handler requests are routed to.
+     *
+     * @return the handler
+     */
+    public OperationHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Handles a request of any operation type.
+     *
+     * @param request the request
+     * @return the handler's response
+     * @throws IllegalArgumentException for unknown request types
+     */
+    public OperationResponse dispatch(OperationRequest<?> request) {
+        return dispatch(request, collectStats ? new OperationStats() : null);
+    }
+
+    /**
+     * Handles a request, recording into stats the caller already started, for
+     * example with queue and decode times measured by a transport. Stats are
+     * recorded whenever a non-null instance is passed, regardless of
+     * {@link #isCollectStats()}.
+     *
+     * @param request the request
+     * @param stats the stats to fill in and attach, or null to skip collection
+     * @return the handler's response
+     * @throws IllegalArgumentException for unknown request types
+     */
+    public OperationResponse dispatch(OperationRequest<?> request, OperationStats stats) {
+        TraceContext trace = request != null ? request.getTraceContext() : null;
+        if (trace != null && trace.isSampled() && tracer != null) {
+            return traced(request, stats, trace, tracer);
+        }
+        return instrumented(request, stats);
+    }
+
+    private OperationResponse traced(OperationRequest<?> request, OperationStats stats,
+                                     TraceContext parent, Tracer tracer) {
+        TraceContext span = parent.newChild();
+        TraceContext previous = tracer.enter(span);
+        long startMillis = System.currentTimeMillis();
+        long start = System.nanoTime();
+        OperationResponse response = null;
+        try {
+            response = instrumented(request, stats);
+            return response;
+        } finally {
+            long duration = System.nanoTime() - start;
+            tracer.exit(previous);
+            tracer.report(new Span(span.getTraceId(), span.getSpanId(), parent.getSpanId(),
+                    spanName(request), startMillis, duration, response != null ? response.getStatus() : null));
+        }
+    }
+
+    private static String spanName(OperationRequest<?> request) {
+        Class<?> entityType = request.getEntityType();
+        return entityType != null
+                ? request.getOperationName() + " " + entityType.getSimpleName() : request.getOperationName();
+    }
+
+    private OperationResponse instrumented(OperationRequest<?> request, OperationStats stats) {
+        if (stats == null) {
+            return route(request);
+        }
+        OperationStats previous = OperationStats.bind(stats);
+        long start = System.nanoTime();
+        OperationResponse response;
+        try {
+            response = route(request);
+        } finally {
+            stats.record(OperationStats.Stage.HANDLE, System.nanoTime() - start);
+            OperationStats.unbind(previous);
+        }
+        if (response != null) {
+            response.addMetadata(stats);
+        }
+        return response;
+    }
+
+    private OperationResponse route(OperationRequest<?> request) {
+        if (request instanceof QueryOperation.Request) {
+            return handler.handle((QueryOperation.Request<?>) request);
+        } else if (request instanceof CreateOperation.Request) {
+            return handler.handle((CreateOperation.Request<?>) request);
+        } else if (request instanceof UpdateOperation.Request) {
+            return handler.handle((UpdateOperation.Request<?>) request);
+        } else if (request instanceof DeleteOperation.Request) {
+            return handler.handle((DeleteOperation.Request<?>) request);
+        }
+        throw new IllegalArgumentException("Unsupported request type: "
+                + (request != null ? request.getClass().getName() : "null"));
+    }
+}
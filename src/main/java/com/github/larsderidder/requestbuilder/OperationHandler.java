@@ -0,0 +1,45 @@
+package com.github.larsderidder.requestbuilder;
+
+/**
+ * Executes operation requests. Implementations connect the request model to a
+ * concrete store or transport; decorators add cross-cutting behaviour on top
+ * of another handler.
+ */
+public interface OperationHandler {
+
+    /**
+     * Handles a create request.
+     *
+     * @param <T> the entity type
+     * @param request the create request
+     * @return the create response
+     */
+    <T> CreateOperation.Response<T> handle(CreateOperation.Request<T> request);
+
+    /**
+     * Handles a query request.
+     *
+     * @param <T> the entity type
+     * @param request the query request
+     * @return the query response; its result list is read-only
+     */
+    <T> QueryOperation.Response<T> handle(QueryOperation.Request<T> request);
+
+    /**
+     * Handles an update request.
+     *
+     * @param <T> the entity type
+     * @param request the update request
+     * @return the update response
+     */
+    <T> UpdateOperation.Response<T> handle(UpdateOperation.Request<T> request);
+
+    /**
+     * Handles a delete request.
+     *
+     * @param <T> the entity type
+     * @param request the delete request
+     * @return the delete response
+     */
+    <T> DeleteOperation.Response<T> handle(DeleteOperation.Request<T> request);
+}
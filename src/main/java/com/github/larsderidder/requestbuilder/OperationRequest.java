@@ -9,6 +9,9 @@ package com.github.larsderidder.requestbuilder;
 public abstract class OperationRequest<T> {
 
     private final Class<T> entityType;
+    private TraceContext traceContext;
+    private Runnable recycler;
+    private boolean released;
 
     /**
      * Default constructor for deserialization.
@@ -35,6 +38,79 @@ public abstract class OperationRequest<T> {
         return entityType;
     }
 
+    /**
+     * Gets the short name of the operation, such as {@code query}, as used in
+     * span names, capture files and reports.
+     *
+     * @return the operation name
+     */
+    public String getOperationName() {
+        return "operation";
+    }
+
+    /**
+     * Gets the trace context propagated with this request.
+     *
+     * @return the trace context, or null if the request is not traced
+     */
+    public TraceContext getTraceContext() {
+        return traceContext;
+    }
+
+    /**
+     * Attaches a trace context. Only called by builders before the request is
+     * handed out, which keeps built requests immutable.
+     *
+     * @param traceContext the trace context
+     */
+    void setTraceContext(TraceContext traceContext) {
+        this.traceContext = traceContext;
+    }
+
+    /**
+     * Returns a pooled request to its pool so it can be reused. After release
+     * the request must no longer be used, by the caller or by any handler it
+     * was passed to. Does nothing for requests that did not come from a pool.
+     *
+     * @throws IllegalStateException if the request was already released
+     */
+    public void release() {
+        if (recycler == null) {
+            return;
+        }
+        if (released) {
+            throw new IllegalStateException("Request already released");
+        }
+        released = true;
+        clear();
+        recycler.run();
+    }
+
+    /**
+     * Marks this request as pooled; {@link #release()} then clears it and
+     * runs the recycler.
+     *
+     * @param recycler returns this instance to its pool
+     */
+    void setRecycler(Runnable recycler) {
+        this.recycler = recycler;
+    }
+
+    /**
+     * Marks a pooled request as handed out again.
+     */
+    void acquire() {
+        released = false;
+    }
+
+    /**
+     * Drops references held by a released request. Subclasses that support
+     * pooling clear their own fields too.
+     */
+    void clear() {
+        traceContext = null;
+    }
+
     /**
      * Creates a builder for create operations.
      *
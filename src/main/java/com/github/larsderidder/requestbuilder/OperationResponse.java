@@ -1,8 +1,12 @@
 package com.github.larsderidder.requestbuilder;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Base class for all operation responses. Encapsulates success/failure state,
- * optional message, and optional result metadata.
+ * optional message, optional entity version, and optional result metadata.
  */
 public class OperationResponse {
 
@@ -13,12 +17,20 @@ public class OperationResponse {
         /** Operation completed successfully */
         SUCCESS,
         /** Operation failed */
-        FAILURE
+        FAILURE,
+        /** Conditional read matched the current version; no entity was returned */
+        NOT_MODIFIED,
+        /** Conditional write did not match the current version; nothing was changed */
+        CONFLICT
     }
 
     private Status status;
     private String message;
+    private String version;
     private ResultMetadata metadata;
+    private List<ResultMetadata> additionalMetadata;
+    private Runnable recycler;
+    private boolean released;
 
     /**
      * Default constructor for deserialization.
@@ -93,12 +105,32 @@ public class OperationResponse {
     }
 
     /**
-     * Checks if the operation failed.
+     * Checks if the operation failed. A version conflict counts as a failure,
+     * since the requested change was not applied.
      *
-     * @return true if status is FAILURE
+     * @return true if status is FAILURE or CONFLICT
      */
     public boolean isFailure() {
-        return status == Status.FAILURE;
+        return status == Status.FAILURE || status == Status.CONFLICT;
+    }
+
+    /**
+     * Checks if a conditional read found the entity unchanged.
+     *
+     * @return true if status is NOT_MODIFIED
+     */
+    public boolean isNotModified() {
+        return status == Status.NOT_MODIFIED;
+    }
+
+    /**
+     * Checks if a conditional write was rejected because the entity version
+     * did not match.
+     *
+     * @return true if status is CONFLICT
+     */
+    public boolean isConflict() {
+        return status == Status.CONFLICT;
     }
 
     /**
@@ -119,6 +151,24 @@ public class OperationResponse {
         this.message = message;
     }
 
+    /**
+     * Gets the entity version (ETag) reported by the handler.
+     *
+     * @return the version, or null if not set
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets the entity version (ETag).
+     *
+     * @param version the version to set
+     */
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
     /**
      * Gets the result metadata.
      *
@@ -136,4 +186,135 @@ public class OperationResponse {
     public void setMetadata(ResultMetadata metadata) {
         this.metadata = metadata;
     }
+
+    /**
+     * Adds metadata to this response, keeping any metadata already set as the
+     * primary one returned by {@link #getMetadata()}. The list is held by the
+     * response, so one metadata instance can be shared between responses.
+     *
+     * @param additional the metadata to add
+     */
+    public void addMetadata(ResultMetadata additional) {
+        if (additional == null || additional == metadata) {
+            return;
+        }
+        if (metadata == null) {
+            metadata = additional;
+            return;
+        }
+        if (additionalMetadata == null) {
+            additionalMetadata = new ArrayList<>(2);
+        } else if (additionalMetadata.contains(additional)) {
+            return;
+        }
+        additionalMetadata.add(additional);
+    }
+
+    /**
+     * Gets the metadata added after the primary metadata, for example the
+     * {@link OperationStats} of a delete that reports {@link AffectedRows}.
+     *
+     * @return the additional metadata, or null if none was added
+     */
+    public List<ResultMetadata> getAdditionalMetadata() {
+        return additionalMetadata;
+    }
+
+    /**
+     * Sets the metadata held besides the primary metadata. The list is
+     * copied, so the caller keeps ownership of the one it passes.
+     *
+     * @param additionalMetadata the additional metadata, or null for none
+     */
+    public void setAdditionalMetadata(List<ResultMetadata> additionalMetadata) {
+        this.additionalMetadata = additionalMetadata != null && !additionalMetadata.isEmpty()
+                ? new ArrayList<>(additionalMetadata) : null;
+    }
+
+    /**
+     * Gets all metadata of this response, the primary metadata first.
+     *
+     * @return the metadata, empty if none is set
+     */
+    public List<ResultMetadata> getAllMetadata() {
+        if (metadata == null) {
+            return Collections.emptyList();
+        }
+        List<ResultMetadata> all = new ArrayList<>(1 + (additionalMetadata != null ? additionalMetadata.size() : 0));
+        all.add(metadata);
+        if (additionalMetadata != null) {
+            all.addAll(additionalMetadata);
+        }
+        return Collections.unmodifiableList(all);
+    }
+
+    /**
+     * Returns a pooled response to its pool so it can be reused. After release
+     * the response must no longer be used. Does nothing for responses that did
+     * not come from a pool.
+     *
+     * @throws IllegalStateException if the response was already released
+     */
+    public void release() {
+        if (recycler == null) {
+            return;
+        }
+        if (released) {
+            throw new IllegalStateException("Response already released");
+        }
+        released = true;
+        clear();
+        recycler.run();
+    }
+
+    /**
+     * Marks this response as pooled; {@link #release()} then clears it and
+     * runs the recycler.
+     *
+     * @param recycler returns this instance to its pool
+     */
+    void setRecycler(Runnable recycler) {
+        this.recycler = recycler;
+    }
+
+    /**
+     * Marks a pooled response as handed out again.
+     */
+    void acquire() {
+        released = false;
+    }
+
+    /**
+     * Drops the state of a released response. Subclasses that support pooling
+     * clear their own fields too.
+     */
+    void clear() {
+        status = null;
+        message = null;
+        version = null;
+        metadata = null;
+        additionalMetadata = null;
+    }
+
+    /**
+     * Finds the first metadata of the given type, checking the primary
+     * metadata before any added later.
+     *
+     * @param <M> the metadata type
+     * @param type the metadata class
+     * @return the metadata, or null if the response holds none of that type
+     */
+    public <M extends ResultMetadata> M getMetadata(Class<M> type) {
+        if (type.isInstance(metadata)) {
+            return type.cast(metadata);
+        }
+        if (additionalMetadata != null) {
+            for (ResultMetadata current : additionalMetadata) {
+                if (type.isInstance(current)) {
+                    return type.cast(current);
+                }
+            }
+        }
+        return null;
+    }
 }
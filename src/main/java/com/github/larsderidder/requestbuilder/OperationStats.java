@@ -0,0 +1,246 @@
+package com.github.larsderidder.requestbuilder;
+
+/**
+ * Result metadata with a server-side cost breakdown of a single operation:
+ * nanoseconds spent per stage, rows scanned versus returned, bytes encoded
+ * and whether a cache answered the request.
+ * <p>
+ * The {@link OperationDispatcher} creates an instance per request when stats
+ * collection is enabled and binds it to the handling thread, where handlers
+ * pick it up through {@link #current()} and add their own figures. When
+ * collection is disabled nothing is allocated and {@link #current()} returns
+ * null from a thread-local lookup.
+ * <p>
+ * The dispatcher records {@link Stage#HANDLE} and the bundled handlers record
+ * {@link Stage#LOOKUP}, rows and cache results. The {@link Stage#QUEUE},
+ * {@link Stage#DECODE} and {@link Stage#ENCODE} stages and the encoded byte
+ * count are left to a transport, which passes its stats to
+ * {@link OperationDispatcher#dispatch(OperationRequest, OperationStats)}.
+ * <p>
+ * All properties have plain getters and setters so the metadata survives
+ * JSON or XML mapping alongside the response.
+ */
+public class OperationStats extends ResultMetadata {
+
+    /**
+     * Processing stages that are timed.
+     */
+    public enum Stage {
+        /** Waiting between receipt and the start of handling */
+        QUEUE,
+        /** Decoding the request from its wire format */
+        DECODE,
+        /** Looking up entities in an index or store */
+        LOOKUP,
+        /** Total time spent in the handler, including lookups */
+        HANDLE,
+        /** Encoding the response to its wire format */
+        ENCODE
+    }
+
+    /**
+     * Outcome of consulting a cache while handling the request.
+     */
+    public enum CacheResult {
+        /** No cache was consulted */
+        NONE,
+        /** A cache answered the request */
+        HIT,
+        /** A cache was consulted but could not answer */
+        MISS
+    }
+
+    private static final ThreadLocal<OperationStats> CURRENT = new ThreadLocal<>();
+
+    private long queueNanos;
+    private long decodeNanos;
+    private long lookupNanos;
+    private long handleNanos;
+    private long encodeNanos;
+    private long rowsScanned;
+    private long rowsReturned;
+    private long bytesEncoded;
+    private CacheResult cacheResult = CacheResult.NONE;
+
+    /**
+     * Creates empty stats.
+     */
+    public OperationStats() {
+        super("Operation stats");
+    }
+
+    /**
+     * Gets the stats bound to the current thread by the dispatcher.
+     *
+     * @return the stats of the operation being handled, or null if collection is disabled
+     */
+    public static OperationStats current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Binds stats to the current thread until {@link #unbind(OperationStats)}.
+     *
+     * @param stats the stats to bind
+     * @return the stats previously bound to this thread, or null
+     */
+    static OperationStats bind(OperationStats stats) {
+        OperationStats previous = CURRENT.get();
+        CURRENT.set(stats);
+        return previous;
+    }
+
+    /**
+     * Restores the binding that was active before {@link #bind(OperationStats)}.
+     *
+     * @param previous the stats returned by bind
+     */
+    static void unbind(OperationStats previous) {
+        if (previous != null) {
+            CURRENT.set(previous);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Adds time to a stage.
+     *
+     * @param stage the stage
+     * @param nanos the elapsed nanoseconds
+     */
+    public void record(Stage stage, long nanos) {
+        switch (stage) {
+            case QUEUE:
+                queueNanos += nanos;
+                break;
+            case DECODE:
+                decodeNanos += nanos;
+                break;
+            case LOOKUP:
+                lookupNanos += nanos;
+                break;
+            case HANDLE:
+                handleNanos += nanos;
+                break;
+            case ENCODE:
+                encodeNanos += nanos;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown stage " + stage);
+        }
+    }
+
+    /**
+     * Gets the time recorded for a stage.
+     *
+     * @param stage the stage
+     * @return the elapsed nanoseconds
+     */
+    public long getNanos(Stage stage) {
+        switch (stage) {
+            case QUEUE:
+                return queueNanos;
+            case DECODE:
+                return decodeNanos;
+            case LOOKUP:
+                return lookupNanos;
+            case HANDLE:
+                return handleNanos;
+            case ENCODE:
+                return encodeNanos;
+            default:
+                throw new IllegalArgumentException("Unknown stage " + stage);
+        }
+    }
+
+    /**
+     * Adds to the scanned and returned row counts.
+     *
+     * @param scanned rows examined
+     * @param returned rows included in the response
+     */
+    public void addRows(long scanned, long returned) {
+        rowsScanned += scanned;
+        rowsReturned += returned;
+    }
+
+    public long getQueueNanos() {
+        return queueNanos;
+    }
+
+    public void setQueueNanos(long queueNanos) {
+        this.queueNanos = queueNanos;
+    }
+
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    public void setDecodeNanos(long decodeNanos) {
+        this.decodeNanos = decodeNanos;
+    }
+
+    public long getLookupNanos() {
+        return lookupNanos;
+    }
+
+    public void setLookupNanos(long lookupNanos) {
+        this.lookupNanos = lookupNanos;
+    }
+
+    public long getHandleNanos() {
+        return handleNanos;
+    }
+
+    public void setHandleNanos(long handleNanos) {
+        this.handleNanos = handleNanos;
+    }
+
+    public long getEncodeNanos() {
+        return encodeNanos;
+    }
+
+    public void setEncodeNanos(long encodeNanos) {
+        this.encodeNanos = encodeNanos;
+    }
+
+    public long getRowsScanned() {
+        return rowsScanned;
+    }
+
+    public void setRowsScanned(long rowsScanned) {
+        this.rowsScanned = rowsScanned;
+    }
+
+    public long getRowsReturned() {
+        return rowsReturned;
+    }
+
+    public void setRowsReturned(long rowsReturned) {
+        this.rowsReturned = rowsReturned;
+    }
+
+    public long getBytesEncoded() {
+        return bytesEncoded;
+    }
+
+    public void setBytesEncoded(long bytesEncoded) {
+        this.bytesEncoded = bytesEncoded;
+    }
+
+    public CacheResult getCacheResult() {
+        return cacheResult;
+    }
+
+    public void setCacheResult(CacheResult cacheResult) {
+        this.cacheResult = cacheResult != null ? cacheResult : CacheResult.NONE;
+    }
+
+    @Override
+    public String toString() {
+        return "OperationStats{queue=" + queueNanos + "ns, decode=" + decodeNanos + "ns, lookup=" + lookupNanos
+                + "ns, handle=" + handleNanos + "ns, encode=" + encodeNanos + "ns, scanned=" + rowsScanned
+                + ", returned=" + rowsReturned + ", bytes=" + bytesEncoded + ", cache=" + cacheResult + "}";
+    }
+}
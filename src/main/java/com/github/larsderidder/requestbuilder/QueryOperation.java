@@ -1,6 +1,7 @@
 package com.github.larsderidder.requestbuilder;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -9,24 +10,85 @@ import java.util.List;
 public class QueryOperation {
 
     /**
-     * Response from a query operation containing a list of matching entities.
+     * What a query returns.
+     */
+    public enum Mode {
+        /** The matching entities */
+        ENTITIES,
+        /** Only the number of matching entities */
+        COUNT,
+        /** Only whether any entity matches */
+        EXISTS
+    }
+
+    /**
+     * Response from a query operation containing a list of matching entities,
+     * or only their count for {@link Mode#COUNT} and {@link Mode#EXISTS} queries.
+     * <p>
+     * The constructors without a list allocate a mutable one for callers that
+     * fill the response themselves. Responses returned by a handler are
+     * read-only: their result list may be shared or immutable, so copy it
+     * before changing it.
      *
      * @param <T> the entity type
      */
     public static class Response<T> extends OperationResponse {
 
         private final List<T> results;
+        private final long count;
 
         public Response() {
             super();
             results = new ArrayList<>();
+            count = -1;
+        }
+
+        public Response(Status status) {
+            super(status);
+            results = new ArrayList<>();
+            count = -1;
         }
 
         public Response(Status status, List<T> results) {
             super(status);
             this.results = results != null ? results : new ArrayList<>();
+            count = -1;
+        }
+
+        /**
+         * Creates a response to a count or exists query. No entities are
+         * carried; the result list is empty and immutable. Handlers answering
+         * an exists query may stop counting at the first match.
+         *
+         * @param status the operation status
+         * @param count the number of matching entities
+         */
+        public Response(Status status, long count) {
+            super(status);
+            this.results = Collections.emptyList();
+            this.count = count;
+        }
+
+        /**
+         * Creates a response without results whose result list is the shared
+         * immutable empty list, so no list is allocated. For handlers that
+         * answer failures, NOT_MODIFIED or empty matches on a hot path;
+         * callers must not add to its results.
+         *
+         * @param <T> the entity type
+         * @param status the operation status
+         * @return a response with no results
+         */
+        public static <T> Response<T> empty(Status status) {
+            return new Response<>(status, Collections.<T>emptyList());
         }
 
+        /**
+         * Gets the matching entities. The list of a response returned by a
+         * handler must not be modified.
+         *
+         * @return the results, never null
+         */
         public List<T> getResults() {
             return results;
         }
@@ -38,6 +100,25 @@ public class QueryOperation {
         public int size() {
             return results.size();
         }
+
+        /**
+         * Gets the number of matching entities: the count reported by a count
+         * or exists query, or the size of the result list otherwise.
+         *
+         * @return the match count
+         */
+        public long getCount() {
+            return count >= 0 ? count : results.size();
+        }
+
+        /**
+         * Checks if any entity matched.
+         *
+         * @return true if the match count is positive
+         */
+        public boolean exists() {
+            return getCount() > 0;
+        }
     }
 
     /**
@@ -59,85 +140,378 @@ public class QueryOperation {
             private String id;
             private String parentId;
             private String referenceId;
+            private String ifNoneMatch;
+            private Mode mode = Mode.ENTITIES;
+            private String snapshot;
+            private TraceContext traceContext;
+            private Identifier contextKey;
+            private Identifier idKey;
+            private Identifier parentKey;
+            private Identifier referenceKey;
 
             public Builder(Class<BT> entityType) {
                 this.entityType = entityType;
             }
 
+            /**
+             * Clears everything but the entity type, so one builder can be
+             * reused for many requests. Builders are not thread-safe; keep
+             * one per thread.
+             *
+             * @return this builder
+             */
+            public Builder<BT> reset() {
+                this.contextId = null;
+                this.id = null;
+                this.parentId = null;
+                this.referenceId = null;
+                this.ifNoneMatch = null;
+                this.mode = Mode.ENTITIES;
+                this.snapshot = null;
+                this.traceContext = null;
+                this.contextKey = null;
+                this.idKey = null;
+                this.parentKey = null;
+                this.referenceKey = null;
+                return this;
+            }
+
             public Request<BT> build() {
-                return new Request<>(entityType, id, parentId, referenceId, contextId);
+                Request<BT> request = new Request<>(entityType, id, parentId, referenceId, contextId, ifNoneMatch, mode,
+                        snapshot);
+                request.setTraceContext(traceContext);
+                request.setIdentifiers(idKey, parentKey, referenceKey, contextKey);
+                return request;
+            }
+
+            public Builder<BT> trace(TraceContext traceContext) {
+                this.traceContext = traceContext;
+                return this;
+            }
+
+            /**
+             * Asks only for the number of matches, so handlers can answer from
+             * an index without loading entities.
+             *
+             * @return this builder
+             */
+            public Builder<BT> count() {
+                this.mode = Mode.COUNT;
+                return this;
+            }
+
+            /**
+             * Asks only whether anything matches, so handlers can stop at the
+             * first match without loading entities.
+             *
+             * @return this builder
+             */
+            public Builder<BT> exists() {
+                this.mode = Mode.EXISTS;
+                return this;
             }
 
             public Builder<BT> contextId(String contextId) {
                 this.contextId = contextId;
+                this.contextKey = null;
+                return this;
+            }
+
+            /**
+             * Sets the context id from a compact identifier, which the request
+             * keeps for handlers that key on it.
+             *
+             * @param contextId the context ID
+             * @return this builder
+             */
+            public Builder<BT> contextId(Identifier contextId) {
+                this.contextId = null;
+                this.contextKey = contextId;
                 return this;
             }
 
             public Builder<BT> id(String id) {
                 this.id = id;
+                this.idKey = null;
+                return this;
+            }
+
+            /**
+             * Sets the primary id from a compact identifier, which the request
+             * keeps for handlers that key on it.
+             *
+             * @param id the primary ID
+             * @return this builder
+             */
+            public Builder<BT> id(Identifier id) {
+                this.id = null;
+                this.idKey = id;
                 return this;
             }
 
             public Builder<BT> parentId(String parentId) {
                 this.parentId = parentId;
+                this.parentKey = null;
+                return this;
+            }
+
+            /**
+             * Sets the parent id from a compact identifier, which the request
+             * keeps for handlers that key on it.
+             *
+             * @param parentId the parent ID
+             * @return this builder
+             */
+            public Builder<BT> parentId(Identifier parentId) {
+                this.parentId = null;
+                this.parentKey = parentId;
                 return this;
             }
 
             public Builder<BT> referenceId(String referenceId) {
                 this.referenceId = referenceId;
+                this.referenceKey = null;
                 return this;
             }
 
-            public Builder<BT> withIdentifiers(String id, String parentId) {
-                this.id = id;
-                this.parentId = parentId;
+            /**
+             * Sets the reference id from a compact identifier, which the
+             * request keeps for handlers that key on it.
+             *
+             * @param referenceId the reference ID
+             * @return this builder
+             */
+            public Builder<BT> referenceId(Identifier referenceId) {
+                this.referenceId = null;
+                this.referenceKey = referenceId;
+                return this;
+            }
+
+            /**
+             * Skips the payload if the result still has the given version; the
+             * handler then answers NOT_MODIFIED with an empty result list.
+             *
+             * @param version the version the caller already holds
+             * @return this builder
+             */
+            public Builder<BT> ifNoneMatch(String version) {
+                this.ifNoneMatch = version;
+                return this;
+            }
+
+            /**
+             * Reads as of an open snapshot, so that several queries see one
+             * consistent state even while writes continue.
+             *
+             * @param token the token of a snapshot opened on the handler
+             * @return this builder
+             */
+            public Builder<BT> snapshot(String token) {
+                this.snapshot = token;
+                return this;
+            }
+
+            /**
+             * Reads as of an open snapshot.
+             *
+             * @param snapshot the snapshot, or null to read the latest state
+             * @return this builder
+             */
+            public Builder<BT> snapshot(Snapshot snapshot) {
+                this.snapshot = snapshot != null ? snapshot.getToken() : null;
                 return this;
             }
+
+            public Builder<BT> withIdentifiers(String id, String parentId) {
+                return id(id).parentId(parentId);
+            }
         }
 
-        private final String contextId;
-        private final String id;
-        private final String parentId;
-        private final String referenceId;
+        private String contextId;
+        private String id;
+        private String parentId;
+        private String referenceId;
+        private final String ifNoneMatch;
+        private final Mode mode;
+        private final String snapshot;
+        private Identifier contextKey;
+        private Identifier idKey;
+        private Identifier parentKey;
+        private Identifier referenceKey;
 
         public Request() {
             contextId = null;
             id = null;
             parentId = null;
             referenceId = null;
+            ifNoneMatch = null;
+            mode = Mode.ENTITIES;
+            snapshot = null;
         }
 
         public Request(Class<T> entityType, String id, String parentId,
                        String referenceId, String contextId) {
+            this(entityType, id, parentId, referenceId, contextId, null);
+        }
+
+        public Request(Class<T> entityType, String id, String parentId,
+                       String referenceId, String contextId, String ifNoneMatch) {
+            this(entityType, id, parentId, referenceId, contextId, ifNoneMatch, Mode.ENTITIES);
+        }
+
+        public Request(Class<T> entityType, String id, String parentId,
+                       String referenceId, String contextId, String ifNoneMatch, Mode mode) {
+            this(entityType, id, parentId, referenceId, contextId, ifNoneMatch, mode, null);
+        }
+
+        public Request(Class<T> entityType, String id, String parentId, String referenceId,
+                       String contextId, String ifNoneMatch, Mode mode, String snapshot) {
             super(entityType);
             this.contextId = contextId;
             this.id = id;
             this.parentId = parentId;
             this.referenceId = referenceId;
+            this.ifNoneMatch = ifNoneMatch;
+            this.mode = mode != null ? mode : Mode.ENTITIES;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public String getOperationName() {
+            return "query";
+        }
+
+        /**
+         * Attaches identifiers the builder was given. Their string forms are
+         * only built if a string getter is called.
+         */
+        void setIdentifiers(Identifier id, Identifier parentId, Identifier referenceId, Identifier contextId) {
+            this.idKey = id;
+            this.parentKey = parentId;
+            this.referenceKey = referenceId;
+            this.contextKey = contextId;
+        }
+
+        /**
+         * Gets the context id as a compact identifier, creating it on first use
+         * if the request was built from a string.
+         *
+         * @return the context identifier, or null if not set
+         */
+        public Identifier getContextIdKey() {
+            if (contextKey == null && contextId != null) {
+                contextKey = Identifier.of(contextId);
+            }
+            return contextKey;
+        }
+
+        /**
+         * Gets the primary id as a compact identifier, creating it on first use
+         * if the request was built from a string.
+         *
+         * @return the identifier, or null if not set
+         */
+        public Identifier getIdKey() {
+            if (idKey == null && id != null) {
+                idKey = Identifier.of(id);
+            }
+            return idKey;
+        }
+
+        /**
+         * Gets the parent id as a compact identifier, creating it on first use
+         * if the request was built from a string.
+         *
+         * @return the parent identifier, or null if not set
+         */
+        public Identifier getParentIdKey() {
+            if (parentKey == null && parentId != null) {
+                parentKey = Identifier.of(parentId);
+            }
+            return parentKey;
+        }
+
+        /**
+         * Gets the reference id as a compact identifier, creating it on first
+         * use if the request was built from a string.
+         *
+         * @return the reference identifier, or null if not set
+         */
+        public Identifier getReferenceIdKey() {
+            if (referenceKey == null && referenceId != null) {
+                referenceKey = Identifier.of(referenceId);
+            }
+            return referenceKey;
         }
 
         public String getContextId() {
+            if (contextId == null && contextKey != null) {
+                contextId = contextKey.toString();
+            }
             return contextId;
         }
 
         public String getId() {
+            if (id == null && idKey != null) {
+                id = idKey.toString();
+            }
             return id;
         }
 
         public String getParentId() {
+            if (parentId == null && parentKey != null) {
+                parentId = parentKey.toString();
+            }
             return parentId;
         }
 
         public String getReferenceId() {
+            if (referenceId == null && referenceKey != null) {
+                referenceId = referenceKey.toString();
+            }
             return referenceId;
         }
 
+        public String getIfNoneMatch() {
+            return ifNoneMatch;
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        /**
+         * Gets the token of the snapshot this query reads from.
+         *
+         * @return the snapshot token, or null to read the latest state
+         */
+        public String getSnapshot() {
+            return snapshot;
+        }
+
+        public boolean hasSnapshot() {
+            return snapshot != null && !snapshot.isEmpty();
+        }
+
+        /**
+         * Checks if the caller only needs a count or existence check, not entities.
+         *
+         * @return true for COUNT and EXISTS queries
+         */
+        public boolean isCountOnly() {
+            return mode != Mode.ENTITIES;
+        }
+
         public boolean hasContextId() {
-            return contextId != null && !contextId.isEmpty();
+            return contextKey != null ? !contextKey.isEmpty() : contextId != null && !contextId.isEmpty();
         }
 
         public boolean hasId() {
-            return id != null && !id.isEmpty();
+            return idKey != null ? !idKey.isEmpty() : id != null && !id.isEmpty();
+        }
+
+        public boolean hasIfNoneMatch() {
+            return ifNoneMatch != null && !ifNoneMatch.isEmpty();
         }
     }
 }
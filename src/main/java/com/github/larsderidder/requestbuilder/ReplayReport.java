@@ -0,0 +1,143 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency per operation type from a {@link WorkloadReplayer}
+ * run. Latencies are measured from each request's intended start time, so
+ * time spent waiting behind slow requests is included (corrected for
+ * coordinated omission).
+ */
+public class ReplayReport {
+
+    /**
+     * Results for one operation type.
+     */
+    public static final class Summary {
+
+        private final String operation;
+        private final long count;
+        private final long failures;
+        private final double throughputPerSecond;
+        private final double meanNanos;
+        private final long p50Nanos;
+        private final long p90Nanos;
+        private final long p99Nanos;
+        private final long p999Nanos;
+        private final long maxNanos;
+
+        Summary(String operation, LatencyHistogram histogram, long failures, long elapsedNanos) {
+            this.operation = operation;
+            this.count = histogram.getCount();
+            this.failures = failures;
+            this.throughputPerSecond = elapsedNanos > 0 ? count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0;
+            this.meanNanos = histogram.getMean();
+            this.p50Nanos = histogram.getValueAtPercentile(50);
+            this.p90Nanos = histogram.getValueAtPercentile(90);
+            this.p99Nanos = histogram.getValueAtPercentile(99);
+            this.p999Nanos = histogram.getValueAtPercentile(99.9);
+            this.maxNanos = histogram.getMax();
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the number of requests that failed or threw.
+         *
+         * @return the failure count
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        public double getThroughputPerSecond() {
+            return throughputPerSecond;
+        }
+
+        public double getMeanNanos() {
+            return meanNanos;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP90Nanos() {
+            return p90Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        public long getP999Nanos() {
+            return p999Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+    }
+
+    /** Name of the summary covering all operations. */
+    public static final String ALL = "all";
+
+    private final Map<String, Summary> summaries;
+    private final long elapsedNanos;
+
+    ReplayReport(Map<String, Summary> summaries, long elapsedNanos) {
+        this.summaries = Collections.unmodifiableMap(new LinkedHashMap<>(summaries));
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Gets the results per operation name, plus {@link #ALL} for the total.
+     *
+     * @return the summaries, in a stable order
+     */
+    public Map<String, Summary> getSummaries() {
+        return summaries;
+    }
+
+    /**
+     * Gets the results for one operation.
+     *
+     * @param operation the operation name, such as {@code query}, or {@link #ALL}
+     * @return the summary, or null if no such requests were replayed
+     */
+    public Summary getSummary(String operation) {
+        return summaries.get(operation);
+    }
+
+    /**
+     * Gets the wall-clock duration of the replay.
+     *
+     * @return the duration in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-8s %10s %8s %12s %10s %10s %10s %10s %10s%n",
+                "op", "count", "failed", "ops/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us"));
+        for (Summary summary : summaries.values()) {
+            out.append(String.format("%-8s %10d %8d %12.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    summary.operation, summary.count, summary.failures, summary.throughputPerSecond,
+                    summary.p50Nanos / 1e3, summary.p90Nanos / 1e3, summary.p99Nanos / 1e3,
+                    summary.p999Nanos / 1e3, summary.maxNanos / 1e3));
+        }
+        return out.toString();
+    }
+}
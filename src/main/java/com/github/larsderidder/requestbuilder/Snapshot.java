@@ -0,0 +1,53 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Handle on a consistent, point-in-time view of a store. Queries built with
+ * {@code snapshot(token)} read the state as of the moment the snapshot was
+ * opened, whatever was written since. The store keeps the versions a snapshot
+ * needs until it is closed, so close snapshots promptly.
+ * <p>
+ * The token is a plain string and can travel with requests; the snapshot
+ * itself stays with the code that opened it.
+ */
+public final class Snapshot implements AutoCloseable {
+
+    private final String token;
+    private final Runnable onClose;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    Snapshot(String token, Runnable onClose) {
+        this.token = token;
+        this.onClose = onClose;
+    }
+
+    /**
+     * Gets the token that queries carry to read from this snapshot.
+     *
+     * @return the snapshot token
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Checks if the snapshot has been closed.
+     *
+     * @return true once closed
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Closes the snapshot, letting the store discard versions only it still
+     * needed. Closing again has no effect.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            onClose.run();
+        }
+    }
+}
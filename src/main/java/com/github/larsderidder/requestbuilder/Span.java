@@ -0,0 +1,82 @@
+package com.github.larsderidder.requestbuilder;
+
+/**
+ * A finished span recorded by the {@link OperationDispatcher} around the
+ * handling of one sampled request.
+ */
+public final class Span {
+
+    private final long traceId;
+    private final long spanId;
+    private final long parentSpanId;
+    private final String name;
+    private final long startTimeMillis;
+    private final long durationNanos;
+    private final OperationResponse.Status status;
+
+    Span(long traceId, long spanId, long parentSpanId, String name, long startTimeMillis,
+         long durationNanos, OperationResponse.Status status) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.startTimeMillis = startTimeMillis;
+        this.durationNanos = durationNanos;
+        this.status = status;
+    }
+
+    public long getTraceId() {
+        return traceId;
+    }
+
+    public long getSpanId() {
+        return spanId;
+    }
+
+    /**
+     * Gets the id of the span that issued the request.
+     *
+     * @return the parent span id
+     */
+    public long getParentSpanId() {
+        return parentSpanId;
+    }
+
+    /**
+     * Gets the span name, made of the operation and entity type, such as
+     * {@code query User}.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the wall-clock start time.
+     *
+     * @return milliseconds since the epoch
+     */
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Gets the status of the response.
+     *
+     * @return the status, or null if the handler threw
+     */
+    public OperationResponse.Status getStatus() {
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return "Span{" + name + " " + Long.toHexString(traceId) + "/" + Long.toHexString(spanId)
+                + " " + durationNanos + "ns " + status + "}";
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compact trace context carried by an {@link OperationRequest}: a 64-bit
+ * trace id, the 64-bit id of the calling span and a flags byte. The sampling
+ * decision is made once, where the trace starts, and travels with the context
+ * so every downstream hop agrees on it.
+ * <p>
+ * Unsampled requests share the {@link #NOT_SAMPLED} instance, so propagating
+ * them allocates nothing. Instances are immutable.
+ */
+public final class TraceContext {
+
+    /** Flag bit set when the trace is recorded. */
+    public static final int FLAG_SAMPLED = 0x01;
+
+    /** Shared context for requests whose trace is not recorded. */
+    public static final TraceContext NOT_SAMPLED = new TraceContext(0L, 0L, 0);
+
+    private static final int ENCODED_LENGTH = 16 + 1 + 16 + 1 + 2;
+
+    private final long traceId;
+    private final long spanId;
+    private final int flags;
+
+    /**
+     * Creates a context.
+     *
+     * @param traceId the id shared by all spans of the trace
+     * @param spanId the id of the span that issued the request
+     * @param flags the trace flags, see {@link #FLAG_SAMPLED}
+     */
+    public TraceContext(long traceId, long spanId, int flags) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.flags = flags & 0xff;
+    }
+
+    /**
+     * Starts a new trace with random ids.
+     *
+     * @param sampled whether the trace is recorded
+     * @return the root context, or {@link #NOT_SAMPLED}
+     */
+    public static TraceContext newTrace(boolean sampled) {
+        if (!sampled) {
+            return NOT_SAMPLED;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new TraceContext(nonZero(random), nonZero(random), FLAG_SAMPLED);
+    }
+
+    /**
+     * Creates the context of a child span in the same trace.
+     *
+     * @return a context with a new random span id and the same flags, or this
+     *         instance if the trace is not sampled
+     */
+    public TraceContext newChild() {
+        if (!isSampled()) {
+            return this;
+        }
+        return new TraceContext(traceId, nonZero(ThreadLocalRandom.current()), flags);
+    }
+
+    private static long nonZero(ThreadLocalRandom random) {
+        long id;
+        do {
+            id = random.nextLong();
+        } while (id == 0L);
+        return id;
+    }
+
+    public long getTraceId() {
+        return traceId;
+    }
+
+    public long getSpanId() {
+        return spanId;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * Checks if the trace is recorded.
+     *
+     * @return true if the sampled flag is set
+     */
+    public boolean isSampled() {
+        return (flags & FLAG_SAMPLED) != 0;
+    }
+
+    /**
+     * Encodes the context as {@code traceId-spanId-flags} in fixed-width
+     * lowercase hex, for message headers and other text transports.
+     *
+     * @return the 36-character encoding
+     */
+    public String encode() {
+        char[] out = new char[ENCODED_LENGTH];
+        writeHex(out, 0, traceId, 16);
+        out[16] = '-';
+        writeHex(out, 17, spanId, 16);
+        out[33] = '-';
+        writeHex(out, 34, flags, 2);
+        return new String(out);
+    }
+
+    /**
+     * Parses a context produced by {@link #encode()}.
+     *
+     * @param encoded the encoded context
+     * @return the context, {@link #NOT_SAMPLED} for unsampled input, or null if
+     *         the input is null or malformed
+     */
+    public static TraceContext decode(String encoded) {
+        if (encoded == null || encoded.length() != ENCODED_LENGTH
+                || encoded.charAt(16) != '-' || encoded.charAt(33) != '-') {
+            return null;
+        }
+        try {
+            long traceId = Long.parseUnsignedLong(encoded.substring(0, 16), 16);
+            long spanId = Long.parseUnsignedLong(encoded.substring(17, 33), 16);
+            int flags = Integer.parseInt(encoded.substring(34), 16);
+            if ((flags & FLAG_SAMPLED) == 0) {
+                return NOT_SAMPLED;
+            }
+            return new TraceContext(traceId, spanId, flags);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void writeHex(char[] out, int offset, long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            out[offset + i] = Character.forDigit((int) (value & 0xf), 16);
+            value >>>= 4;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TraceContext)) {
+            return false;
+        }
+        TraceContext other = (TraceContext) o;
+        return traceId == other.traceId && spanId == other.spanId && flags == other.flags;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(traceId) * 31 + Long.hashCode(spanId) + flags;
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
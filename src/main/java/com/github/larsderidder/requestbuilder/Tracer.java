@@ -0,0 +1,73 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Starts traces at the edge and receives the spans the
+ * {@link OperationDispatcher} records for sampled requests.
+ * <p>
+ * The sampling decision is made once per trace in {@link #startTrace()};
+ * downstream hops only read the flag carried by the {@link TraceContext}.
+ */
+public class Tracer {
+
+    private static final ThreadLocal<TraceContext> CURRENT = new ThreadLocal<>();
+
+    private final double sampleRate;
+    private final Consumer<? super Span> reporter;
+
+    /**
+     * Creates a tracer.
+     *
+     * @param sampleRate fraction of new traces to record, from 0 to 1
+     * @param reporter receives finished spans; called on the handling thread
+     */
+    public Tracer(double sampleRate, Consumer<? super Span> reporter) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate must be between 0 and 1: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        this.reporter = reporter;
+    }
+
+    /**
+     * Starts a trace, deciding whether it is sampled.
+     *
+     * @return a new sampled root context, or {@link TraceContext#NOT_SAMPLED}
+     */
+    public TraceContext startTrace() {
+        boolean sampled = sampleRate >= 1 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+        return TraceContext.newTrace(sampled);
+    }
+
+    /**
+     * Gets the context of the span being handled on this thread, so handlers
+     * can propagate it to the requests they issue.
+     *
+     * @return the current sampled span context, or null outside a sampled span
+     */
+    public static TraceContext current() {
+        return CURRENT.get();
+    }
+
+    TraceContext enter(TraceContext span) {
+        TraceContext previous = CURRENT.get();
+        CURRENT.set(span);
+        return previous;
+    }
+
+    void exit(TraceContext previous) {
+        if (previous != null) {
+            CURRENT.set(previous);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    void report(Span span) {
+        if (reporter != null) {
+            reporter.accept(span);
+        }
+    }
+}
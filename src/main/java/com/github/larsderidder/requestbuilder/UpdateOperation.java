@@ -20,6 +20,9 @@ public class UpdateOperation {
         public static class Builder<BT> {
             private BT entity;
             private final Class<BT> entityType;
+            private String ifVersion;
+            private String idempotencyKey;
+            private TraceContext traceContext;
 
             /**
              * Creates a new builder for the given entity type.
@@ -41,23 +44,80 @@ public class UpdateOperation {
                 return this;
             }
 
+            /**
+             * Only applies the update if the stored entity still has the given
+             * version. A mismatch yields a CONFLICT response.
+             *
+             * @param version the version the caller last read
+             * @return this builder
+             */
+            public Builder<BT> ifVersion(String version) {
+                this.ifVersion = version;
+                return this;
+            }
+
+            /**
+             * Sets a client-chosen key identifying this logical update across
+             * retries. Handlers that deduplicate return the original response
+             * for a repeated key instead of applying it again.
+             *
+             * @param idempotencyKey the key, unique per logical operation
+             * @return this builder
+             */
+            public Builder<BT> idempotencyKey(String idempotencyKey) {
+                this.idempotencyKey = idempotencyKey;
+                return this;
+            }
+
+            /**
+             * Propagates a trace context with the request.
+             *
+             * @param traceContext the caller's trace context
+             * @return this builder
+             */
+            public Builder<BT> trace(TraceContext traceContext) {
+                this.traceContext = traceContext;
+                return this;
+            }
+
+            /**
+             * Clears everything but the entity type, so one builder can be
+             * reused for many requests. Builders are not thread-safe; keep
+             * one per thread.
+             *
+             * @return this builder
+             */
+            public Builder<BT> reset() {
+                this.entity = null;
+                this.ifVersion = null;
+                this.idempotencyKey = null;
+                this.traceContext = null;
+                return this;
+            }
+
             /**
              * Builds the update request.
              *
              * @return the constructed request
              */
             public Request<BT> build() {
-                return new Request<>(entityType, entity);
+                Request<BT> request = new Request<>(entityType, entity, ifVersion, idempotencyKey);
+                request.setTraceContext(traceContext);
+                return request;
             }
         }
 
         private final T entity;
+        private final String ifVersion;
+        private final String idempotencyKey;
 
         /**
          * Default constructor for deserialization.
          */
         public Request() {
             entity = null;
+            ifVersion = null;
+            idempotencyKey = null;
         }
 
         /**
@@ -67,8 +127,38 @@ public class UpdateOperation {
          * @param entity the entity to update
          */
         public Request(Class<T> entityType, T entity) {
+            this(entityType, entity, null);
+        }
+
+        /**
+         * Creates a new conditional update request.
+         *
+         * @param entityType the class of the entity
+         * @param entity the entity to update
+         * @param ifVersion the expected current version, or null for an unconditional update
+         */
+        public Request(Class<T> entityType, T entity, String ifVersion) {
+            this(entityType, entity, ifVersion, null);
+        }
+
+        /**
+         * Creates a new conditional update request with an idempotency key.
+         *
+         * @param entityType the class of the entity
+         * @param entity the entity to update
+         * @param ifVersion the expected current version, or null for an unconditional update
+         * @param idempotencyKey the key identifying this update across retries, or null
+         */
+        public Request(Class<T> entityType, T entity, String ifVersion, String idempotencyKey) {
             super(entityType);
             this.entity = entity;
+            this.ifVersion = ifVersion;
+            this.idempotencyKey = idempotencyKey;
+        }
+
+        @Override
+        public String getOperationName() {
+            return "update";
         }
 
         /**
@@ -79,6 +169,42 @@ public class UpdateOperation {
         public T getEntity() {
             return entity;
         }
+
+        /**
+         * Gets the version the stored entity must have for the update to apply.
+         *
+         * @return the expected version, or null if unconditional
+         */
+        public String getIfVersion() {
+            return ifVersion;
+        }
+
+        /**
+         * Checks if this is a conditional update.
+         *
+         * @return true if an expected version is set
+         */
+        public boolean hasIfVersion() {
+            return ifVersion != null && !ifVersion.isEmpty();
+        }
+
+        /**
+         * Gets the client-chosen key identifying this logical update across retries.
+         *
+         * @return the idempotency key, or null if not set
+         */
+        public String getIdempotencyKey() {
+            return idempotencyKey;
+        }
+
+        /**
+         * Checks if an idempotency key is set.
+         *
+         * @return true if the request may be deduplicated
+         */
+        public boolean hasIdempotencyKey() {
+            return idempotencyKey != null && !idempotencyKey.isEmpty();
+        }
     }
 
     /**
@@ -103,5 +229,15 @@ public class UpdateOperation {
         public Response(Status status) {
             super(status);
         }
+
+        /**
+         * Creates a response with status and message.
+         *
+         * @param status the operation status
+         * @param message descriptive message
+         */
+        public Response(Status status, String message) {
+            super(status, message);
+        }
     }
 }
@@ -0,0 +1,151 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads workloads written by {@link WorkloadRecorder} back into requests.
+ */
+public class WorkloadReader {
+
+    private final EntityCodec codec;
+    private final ClassLoader classLoader;
+
+    /**
+     * Creates a reader that ignores recorded entities.
+     */
+    public WorkloadReader() {
+        this(null);
+    }
+
+    /**
+     * Creates a reader.
+     *
+     * @param codec decodes recorded entities, or null to ignore them
+     */
+    public WorkloadReader(EntityCodec codec) {
+        this(codec, Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * Creates a reader resolving entity classes through the given class loader.
+     *
+     * @param codec decodes recorded entities, or null to ignore them
+     * @param classLoader loads the recorded entity classes
+     */
+    public WorkloadReader(EntityCodec codec, ClassLoader classLoader) {
+        this.codec = codec;
+        this.classLoader = classLoader != null ? classLoader : WorkloadReader.class.getClassLoader();
+    }
+
+    /**
+     * Reads every request from a capture. Blank lines are skipped.
+     *
+     * @param source the capture, read to the end but not closed
+     * @return the requests in file order
+     * @throws IOException if reading fails
+     * @throws IllegalArgumentException if a line is malformed or names an unknown class
+     */
+    public List<CapturedRequest> read(Reader source) throws IOException {
+        BufferedReader reader = source instanceof BufferedReader ? (BufferedReader) source : new BufferedReader(source);
+        List<CapturedRequest> requests = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                requests.add(parse(line));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid capture line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return requests;
+    }
+
+    /**
+     * Parses a single capture line.
+     *
+     * @param line the line
+     * @return the captured request
+     * @throws IllegalArgumentException if the line is malformed or names an unknown class
+     */
+    public CapturedRequest parse(String line) {
+        Map<String, Object> fields = JsonLines.parse(line);
+        Long offset = (Long) fields.get("t");
+        String operation = (String) fields.get("op");
+        Class<?> entityType = load((String) fields.get("type"));
+        OperationRequest<?> request = build(operation, entityType, fields);
+        return new CapturedRequest(offset != null ? offset : 0L, request);
+    }
+
+    private <T> OperationRequest<T> build(String operation, Class<T> entityType, Map<String, Object> fields) {
+        TraceContext trace = TraceContext.decode((String) fields.get("trace"));
+        if ("query".equals(operation)) {
+            QueryOperation.Request.Builder<T> builder = OperationRequest.query(entityType)
+                    .id((String) fields.get("id"))
+                    .parentId((String) fields.get("parentId"))
+                    .referenceId((String) fields.get("referenceId"))
+                    .contextId((String) fields.get("contextId"))
+                    .ifNoneMatch((String) fields.get("ifNoneMatch"))
+                    .trace(trace);
+            String mode = (String) fields.get("mode");
+            if (QueryOperation.Mode.COUNT.name().equals(mode)) {
+                builder.count();
+            } else if (QueryOperation.Mode.EXISTS.name().equals(mode)) {
+                builder.exists();
+            }
+            return builder.build();
+        } else if ("create".equals(operation)) {
+            return OperationRequest.create(entityType)
+                    .entity(entity(entityType, fields))
+                    .idempotencyKey((String) fields.get("idempotencyKey"))
+                    .trace(trace)
+                    .build();
+        } else if ("update".equals(operation)) {
+            return OperationRequest.update(entityType)
+                    .entity(entity(entityType, fields))
+                    .ifVersion((String) fields.get("ifVersion"))
+                    .idempotencyKey((String) fields.get("idempotencyKey"))
+                    .trace(trace)
+                    .build();
+        } else if ("delete".equals(operation)) {
+            DeleteOperation.Request.Builder<T> builder = OperationRequest.delete(entityType)
+                    .id((String) fields.get("id"))
+                    .parentId((String) fields.get("parentId"))
+                    .ifVersion((String) fields.get("ifVersion"))
+                    .trace(trace);
+            if (Boolean.TRUE.equals(fields.get("allWithParent"))) {
+                builder.allWithParent((String) fields.get("parentId"));
+            }
+            Long maxRows = (Long) fields.get("maxRows");
+            if (maxRows != null) {
+                builder.maxRows(maxRows.intValue());
+            }
+            return builder.build();
+        }
+        throw new IllegalArgumentException("Unknown operation " + operation);
+    }
+
+    private <T> T entity(Class<T> entityType, Map<String, Object> fields) {
+        String encoded = (String) fields.get("entity");
+        return encoded != null && codec != null ? codec.decode(entityType, encoded) : null;
+    }
+
+    private Class<?> load(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Missing entity type");
+        }
+        try {
+            return Class.forName(name, false, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unknown entity type " + name, e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Records a stream of requests with their timing as JSON lines, one request
+ * per line, for later replay with {@link WorkloadReplayer}. Each line holds
+ * the offset in nanoseconds since the first recorded request ({@code t}), the
+ * operation, the entity class name and every request field that is set.
+ * <p>
+ * Entities are written only when an {@link EntityCodec} is given; otherwise
+ * replayed creates and updates carry no entity. Recording is synchronized, so
+ * one recorder may be shared by all handling threads; {@link #record(OperationRequest)}
+ * reads the clock under the lock, so lines are written in offset order.
+ */
+public class WorkloadRecorder implements Closeable {
+
+    private final Writer writer;
+    private final EntityCodec codec;
+    private long startNanos = -1;
+    private long recorded;
+
+    /**
+     * Creates a recorder that does not write entities.
+     *
+     * @param writer the destination, closed by {@link #close()}
+     */
+    public WorkloadRecorder(Writer writer) {
+        this(writer, null);
+    }
+
+    /**
+     * Creates a recorder.
+     *
+     * @param writer the destination, closed by {@link #close()}
+     * @param codec encodes entities, or null to omit them
+     */
+    public WorkloadRecorder(Writer writer, EntityCodec codec) {
+        this.writer = writer;
+        this.codec = codec;
+    }
+
+    /**
+     * Records a request issued now.
+     *
+     * @param request the request
+     * @throws UncheckedIOException if writing fails
+     */
+    public synchronized void record(OperationRequest<?> request) {
+        record(request, System.nanoTime());
+    }
+
+    /**
+     * Records a request issued at the given {@link System#nanoTime()}. Lines
+     * are written in call order; a timestamp earlier than the first recorded
+     * one is written at offset 0.
+     *
+     * @param request the request
+     * @param timestampNanos when the request was issued
+     * @throws UncheckedIOException if writing fails
+     */
+    public synchronized void record(OperationRequest<?> request, long timestampNanos) {
+        if (startNanos < 0) {
+            startNanos = timestampNanos;
+        }
+        StringBuilder line = new StringBuilder(128).append('{');
+        JsonLines.appendField(line, "t", Math.max(0, timestampNanos - startNanos));
+        JsonLines.appendField(line, "op", request.getOperationName());
+        JsonLines.appendField(line, "type", request.getEntityType() != null ? request.getEntityType().getName() : null);
+        Object entity = null;
+        if (request instanceof CreateOperation.Request) {
+            CreateOperation.Request<?> create = (CreateOperation.Request<?>) request;
+            entity = create.getEntity();
+            JsonLines.appendField(line, "idempotencyKey", create.getIdempotencyKey());
+        } else if (request instanceof UpdateOperation.Request) {
+            UpdateOperation.Request<?> update = (UpdateOperation.Request<?>) request;
+            entity = update.getEntity();
+            JsonLines.appendField(line, "ifVersion", update.getIfVersion());
+            JsonLines.appendField(line, "idempotencyKey", update.getIdempotencyKey());
+        } else if (request instanceof QueryOperation.Request) {
+            QueryOperation.Request<?> query = (QueryOperation.Request<?>) request;
+            JsonLines.appendField(line, "id", query.getId());
+            JsonLines.appendField(line, "parentId", query.getParentId());
+            JsonLines.appendField(line, "referenceId", query.getReferenceId());
+            JsonLines.appendField(line, "contextId", query.getContextId());
+            JsonLines.appendField(line, "ifNoneMatch", query.getIfNoneMatch());
+            if (query.isCountOnly()) {
+                JsonLines.appendField(line, "mode", query.getMode().name());
+            }
+        } else if (request instanceof DeleteOperation.Request) {
+            DeleteOperation.Request<?> delete = (DeleteOperation.Request<?>) request;
+            JsonLines.appendField(line, "id", delete.getId());
+            JsonLines.appendField(line, "parentId", delete.getParentId());
+            JsonLines.appendField(line, "ifVersion", delete.getIfVersion());
+            if (delete.isAllWithParent()) {
+                JsonLines.appendField(line, "allWithParent", true);
+            }
+            if (delete.getMaxRows() > 0) {
+                JsonLines.appendField(line, "maxRows", delete.getMaxRows());
+            }
+        }
+        if (request.getTraceContext() != null) {
+            JsonLines.appendField(line, "trace", request.getTraceContext().encode());
+        }
+        if (entity != null && codec != null) {
+            JsonLines.appendField(line, "entity", codec.encode(entity));
+        }
+        line.append('}').append('\n');
+        try {
+            writer.write(line.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        recorded++;
+    }
+
+    /**
+     * Gets the number of requests recorded so far.
+     *
+     * @return the request count
+     */
+    public synchronized long getRecordedCount() {
+        return recorded;
+    }
+
+    /**
+     * Flushes buffered lines to the destination.
+     *
+     * @throws IOException if flushing fails
+     */
+    public synchronized void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,178 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a captured workload against a handler in open-loop mode: each
+ * request is sent at its recorded offset, divided by the speedup, no matter
+ * how long earlier requests take. Latency is measured from the intended send
+ * time to completion, so a stalled handler shows up in the percentiles
+ * instead of silently slowing the load down.
+ * <p>
+ * Requests are issued from a pool of worker threads. When all workers are busy
+ * the backlog waits, and that waiting counts towards latency.
+ */
+public class WorkloadReplayer {
+
+    /**
+     * Builder for constructing replayers.
+     */
+    public static class Builder {
+
+        private double speedup = 1.0;
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Sets how much faster than recorded to send requests.
+         *
+         * @param speedup the rate multiplier, 1 for the original rate
+         * @return this builder
+         */
+        public Builder speedup(double speedup) {
+            if (!(speedup > 0)) {
+                throw new IllegalArgumentException("speedup must be positive: " + speedup);
+            }
+            this.speedup = speedup;
+            return this;
+        }
+
+        /**
+         * Sets the number of worker threads issuing requests.
+         *
+         * @param threads the thread count
+         * @return this builder
+         */
+        public Builder threads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads must be positive: " + threads);
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Builds the replayer.
+         *
+         * @return the constructed replayer
+         */
+        public WorkloadReplayer build() {
+            return new WorkloadReplayer(speedup, threads);
+        }
+    }
+
+    private static final class Results {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final AtomicLong failures = new AtomicLong();
+    }
+
+    private final double speedup;
+    private final int threads;
+
+    private WorkloadReplayer(double speedup, int threads) {
+        this.speedup = speedup;
+        this.threads = threads;
+    }
+
+    /**
+     * Creates a builder for a replayer.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Replays a workload and waits for every request to complete.
+     *
+     * @param workload the requests, in any order; they are sent by offset
+     * @param handler the handler to send them to
+     * @return throughput and latency per operation
+     * @throws InterruptedException if interrupted while replaying
+     */
+    public ReplayReport replay(List<CapturedRequest> workload, OperationHandler handler) throws InterruptedException {
+        OperationDispatcher dispatcher = new OperationDispatcher(handler);
+        Map<String, Results> results = new ConcurrentHashMap<>();
+        Results all = new Results();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "workload-replay-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Stable, so requests recorded at the same offset keep their order.
+        List<CapturedRequest> ordered = new ArrayList<>(workload);
+        ordered.sort(Comparator.comparingLong(CapturedRequest::getOffsetNanos));
+
+        long start = System.nanoTime();
+        try {
+            for (CapturedRequest captured : ordered) {
+                long intended = start + (long) (captured.getOffsetNanos() / speedup);
+                long wait;
+                while ((wait = intended - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+                OperationRequest<?> request = captured.getRequest();
+                Results forOperation = results.computeIfAbsent(request.getOperationName(), name -> new Results());
+                workers.execute(() -> send(dispatcher, request, intended, forOperation, all));
+            }
+            workers.shutdown();
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                // keep waiting for slow handlers
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Map<String, ReplayReport.Summary> summaries = new LinkedHashMap<>();
+        for (String operation : new String[] {"create", "query", "update", "delete"}) {
+            Results forOperation = results.remove(operation);
+            if (forOperation != null) {
+                summaries.put(operation, summary(operation, forOperation, elapsed));
+            }
+        }
+        for (Map.Entry<String, Results> other : results.entrySet()) {
+            summaries.put(other.getKey(), summary(other.getKey(), other.getValue(), elapsed));
+        }
+        summaries.put(ReplayReport.ALL, summary(ReplayReport.ALL, all, elapsed));
+        return new ReplayReport(summaries, elapsed);
+    }
+
+    private static void send(OperationDispatcher dispatcher, OperationRequest<?> request, long intended,
+                             Results forOperation, Results all) {
+        boolean failed;
+        try {
+            OperationResponse response = dispatcher.dispatch(request);
+            failed = response == null || response.isFailure();
+        } catch (RuntimeException e) {
+            failed = true;
+        }
+        long latency = System.nanoTime() - intended;
+        forOperation.latencies.record(latency);
+        all.latencies.record(latency);
+        if (failed) {
+            forOperation.failures.incrementAndGet();
+            all.failures.incrementAndGet();
+        }
+    }
+
+    private static ReplayReport.Summary summary(String operation, Results results, long elapsed) {
+        return new ReplayReport.Summary(operation, results.latencies, results.failures.get(), elapsed);
+    }
+}
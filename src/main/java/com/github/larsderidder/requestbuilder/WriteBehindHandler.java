@@ -0,0 +1,464 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+
+/**
+ * Decorator that acknowledges updates immediately and writes them to its
+ * delegate later, coalescing repeated updates to the same (entity type, id).
+ * <p>
+ * Only entity types registered on the builder are buffered; their ids are
+ * read through the given {@link EntityMappings}. For each pending id the last
+ * update wins unless a merge function is registered for the type. Pending
+ * entries are written when their count reaches the flush threshold, when the
+ * flush interval elapses, on {@link #flush()} and on {@link #close()}. Flushes
+ * triggered by the threshold or the interval run on the handler's flush
+ * thread, never on the caller's.
+ * <p>
+ * A write that throws is counted as a failure and its entry is buffered
+ * again, merged with any update that arrived in the meantime, so the next
+ * flush retries it. After {@code maxWriteAttempts} throwing writes the entry
+ * is abandoned; {@link WriteBehindMetrics#getUpdatesAbandoned()} counts it and
+ * {@link #getLastWriteFailure()} holds the cause. After {@link #close()},
+ * updates are no longer buffered but forwarded to the delegate.
+ * <p>
+ * To keep the delegate consistent with what callers observe:
+ * <ul>
+ * <li>a delete discards buffered updates for its id before it is forwarded;
+ * a bulk delete by parent first writes the type's pending entries, since an
+ * update may have moved an entity to or from that parent;</li>
+ * <li>conditional updates ({@code ifVersion}) and queries first write the
+ * pending entries they could observe, then are forwarded.</li>
+ * </ul>
+ * Flushes, deletes and conditional updates are serialized with each other, so
+ * a flushed update can never land after a delete of the same id. All methods
+ * are safe to call from multiple threads.
+ */
+public class WriteBehindHandler extends ForwardingOperationHandler implements AutoCloseable {
+
+    /** Message of the response returned for a buffered update. */
+    public static final String ACCEPTED_MESSAGE = "Accepted for write-behind";
+
+    /**
+     * Builder for constructing write-behind handlers.
+     */
+    public static class Builder {
+
+        private final OperationHandler delegate;
+        private final EntityMappings mappings;
+        private final Map<Class<?>, BinaryOperator<Object>> bufferedTypes = new HashMap<>();
+        private int flushThreshold = 1000;
+        private long flushIntervalNanos;
+        private int maxWriteAttempts = 5;
+
+        /**
+         * Creates a new builder.
+         *
+         * @param delegate the handler to write to
+         * @param mappings the entity mappings used to read ids
+         */
+        public Builder(OperationHandler delegate, EntityMappings mappings) {
+            this.delegate = delegate;
+            this.mappings = mappings;
+        }
+
+        /**
+         * Buffers updates of the given type; the last update per id wins.
+         *
+         * @param <T> the entity type
+         * @param entityType the class of the entity
+         * @return this builder
+         */
+        public <T> Builder buffer(Class<T> entityType) {
+            return buffer(entityType, null);
+        }
+
+        /**
+         * Buffers updates of the given type, combining pending and incoming
+         * updates for the same id with a merge function.
+         *
+         * @param <T> the entity type
+         * @param entityType the class of the entity
+         * @param merge combines the pending entity (first) with the incoming one (second)
+         * @return this builder
+         */
+        @SuppressWarnings("unchecked")
+        public <T> Builder buffer(Class<T> entityType, BinaryOperator<T> merge) {
+            bufferedTypes.put(entityType, (BinaryOperator<Object>) merge);
+            return this;
+        }
+
+        /**
+         * Sets the number of pending entries that triggers a flush.
+         *
+         * @param flushThreshold the entry count, at least 1
+         * @return this builder
+         */
+        public Builder flushThreshold(int flushThreshold) {
+            if (flushThreshold < 1) {
+                throw new IllegalArgumentException("flushThreshold must be positive");
+            }
+            this.flushThreshold = flushThreshold;
+            return this;
+        }
+
+        /**
+         * Flushes periodically on a background thread. Disabled by default.
+         *
+         * @param interval the time between flushes
+         * @param unit the unit of the interval
+         * @return this builder
+         */
+        public Builder flushInterval(long interval, TimeUnit unit) {
+            this.flushIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        /**
+         * Sets how many times an entry is written before it is abandoned when
+         * every write throws. Defaults to 5.
+         *
+         * @param maxWriteAttempts the attempt count, at least 1
+         * @return this builder
+         */
+        public Builder maxWriteAttempts(int maxWriteAttempts) {
+            if (maxWriteAttempts < 1) {
+                throw new IllegalArgumentException("maxWriteAttempts must be positive");
+            }
+            this.maxWriteAttempts = maxWriteAttempts;
+            return this;
+        }
+
+        /**
+         * Builds the handler and starts its flush thread.
+         *
+         * @return the constructed handler
+         */
+        public WriteBehindHandler build() {
+            return new WriteBehindHandler(this);
+        }
+    }
+
+    private static final class PendingKey {
+        private final Class<?> entityType;
+        private final String id;
+
+        PendingKey(Class<?> entityType, String id) {
+            this.entityType = entityType;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PendingKey)) {
+                return false;
+            }
+            PendingKey other = (PendingKey) o;
+            return entityType == other.entityType && id.equals(other.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * entityType.hashCode() + id.hashCode();
+        }
+    }
+
+    private static final class Pending {
+        private final Object entity;
+        private final long firstBufferedNanos;
+        private final int failedAttempts;
+
+        Pending(Object entity, long firstBufferedNanos, int failedAttempts) {
+            this.entity = entity;
+            this.firstBufferedNanos = firstBufferedNanos;
+            this.failedAttempts = failedAttempts;
+        }
+    }
+
+    private final EntityMappings mappings;
+    private final Map<Class<?>, BinaryOperator<Object>> bufferedTypes;
+    private final int flushThreshold;
+    private final int maxWriteAttempts;
+    private final ConcurrentHashMap<PendingKey, Pending> pending = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final AtomicLong updatesBuffered = new AtomicLong();
+    private final AtomicLong updatesWritten = new AtomicLong();
+    private final AtomicLong updatesCancelled = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+    private final AtomicLong updatesAbandoned = new AtomicLong();
+    private volatile RuntimeException lastWriteFailure;
+    private volatile boolean closed;
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong totalFlushLagNanos = new AtomicLong();
+    private volatile long lastFlushLagNanos;
+    private volatile long maxFlushLagNanos;
+
+    private WriteBehindHandler(Builder builder) {
+        super(builder.delegate);
+        this.mappings = builder.mappings != null ? builder.mappings : new EntityMappings();
+        this.bufferedTypes = new HashMap<>(builder.bufferedTypes);
+        this.flushThreshold = builder.flushThreshold;
+        this.maxWriteAttempts = builder.maxWriteAttempts;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (builder.flushIntervalNanos > 0) {
+            scheduler.scheduleWithFixedDelay(this::backgroundFlush, builder.flushIntervalNanos,
+                    builder.flushIntervalNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Creates a builder for a write-behind handler.
+     *
+     * @param delegate the handler to write to
+     * @param mappings the entity mappings used to read ids
+     * @return a new builder
+     */
+    public static Builder builder(OperationHandler delegate, EntityMappings mappings) {
+        return new Builder(delegate, mappings);
+    }
+
+    @Override
+    public <T> QueryOperation.Response<T> handle(QueryOperation.Request<T> request) {
+        // Snapshot reads cannot see pending updates, which would commit after the snapshot.
+        if (!pending.isEmpty() && !request.hasSnapshot() && bufferedTypes.containsKey(request.getEntityType())) {
+            if (request.hasId()) {
+                flush(new PendingKey(request.getEntityType(), request.getId()));
+            } else {
+                flush();
+            }
+        }
+        return getDelegate().handle(request);
+    }
+
+    @Override
+    public <T> UpdateOperation.Response<T> handle(UpdateOperation.Request<T> request) {
+        Class<T> entityType = request.getEntityType();
+        String id = bufferedTypes.containsKey(entityType) ? mappings.idOf(entityType, request.getEntity()) : null;
+        if (id == null) {
+            return getDelegate().handle(request);
+        }
+        if (closed) {
+            return getDelegate().handle(request);
+        }
+        PendingKey key = new PendingKey(entityType, id);
+        if (request.hasIfVersion()) {
+            synchronized (flushLock) {
+                flush(key);
+                return getDelegate().handle(request);
+            }
+        }
+
+        BinaryOperator<Object> merge = bufferedTypes.get(entityType);
+        Object entity = request.getEntity();
+        long now = System.nanoTime();
+        pending.merge(key, new Pending(entity, now, 0), (current, incoming) -> new Pending(
+                merge != null ? merge.apply(current.entity, incoming.entity) : incoming.entity,
+                current.firstBufferedNanos, current.failedAttempts));
+        updatesBuffered.incrementAndGet();
+        if (closed) {
+            // close() may have flushed before this entry was buffered.
+            flush(key);
+        }
+
+        if (pending.size() >= flushThreshold && flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(() -> {
+                    flushScheduled.set(false);
+                    backgroundFlush();
+                });
+            } catch (RejectedExecutionException e) {
+                // Closed; write on the caller's thread as close() would have.
+                flushScheduled.set(false);
+                flush();
+            }
+        }
+        return new UpdateOperation.Response<>(OperationResponse.Status.SUCCESS, ACCEPTED_MESSAGE);
+    }
+
+    @Override
+    public <T> DeleteOperation.Response<T> handle(DeleteOperation.Request<T> request) {
+        Class<T> entityType = request.getEntityType();
+        if (!bufferedTypes.containsKey(entityType)) {
+            return getDelegate().handle(request);
+        }
+        synchronized (flushLock) {
+            if (request.isAllWithParent()) {
+                flushType(entityType);
+            } else if (request.getId() != null
+                    && pending.remove(new PendingKey(entityType, request.getId())) != null) {
+                updatesCancelled.incrementAndGet();
+            }
+            return getDelegate().handle(request);
+        }
+    }
+
+    /**
+     * Writes the pending entries of one type. A bulk delete selects children
+     * by their parent in the store, and a buffered update may move an entity
+     * to another parent, so the delegate must hold every acknowledged update
+     * before the delete runs.
+     */
+    private void flushType(Class<?> entityType) {
+        int written = 0;
+        for (PendingKey key : new ArrayList<>(pending.keySet())) {
+            if (key.entityType == entityType && write(key)) {
+                written++;
+            }
+        }
+        if (written > 0) {
+            flushes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes all pending updates to the delegate.
+     *
+     * @return the number of entries written
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            List<PendingKey> keys = new ArrayList<>(pending.keySet());
+            int written = 0;
+            for (PendingKey key : keys) {
+                if (write(key)) {
+                    written++;
+                }
+            }
+            if (written > 0) {
+                flushes.incrementAndGet();
+            }
+            return written;
+        }
+    }
+
+    /**
+     * Flushes on the flush thread. An exception escaping a periodic task
+     * would cancel it, so anything thrown here is counted and dropped; the
+     * entries it concerns stay pending.
+     */
+    private void backgroundFlush() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            writeFailures.incrementAndGet();
+        }
+    }
+
+    private void flush(PendingKey key) {
+        synchronized (flushLock) {
+            if (write(key)) {
+                flushes.incrementAndGet();
+            }
+        }
+    }
+
+    private boolean write(PendingKey key) {
+        Pending entry = pending.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        UpdateOperation.Response<?> response;
+        try {
+            response = getDelegate().handle(request(key.entityType, entry.entity));
+        } catch (RuntimeException e) {
+            writeFailures.incrementAndGet();
+            lastWriteFailure = e;
+            rebuffer(key, entry);
+            return false;
+        }
+        long lag = System.nanoTime() - entry.firstBufferedNanos;
+        totalFlushLagNanos.addAndGet(lag);
+        lastFlushLagNanos = lag;
+        if (lag > maxFlushLagNanos) {
+            maxFlushLagNanos = lag;
+        }
+        updatesWritten.incrementAndGet();
+        if (response == null || !response.isSuccess()) {
+            writeFailures.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Puts back an entry whose write threw, unless it has used up its write
+     * attempts. An update buffered since it was taken is newer, so it is
+     * merged on top of the failed one.
+     */
+    private void rebuffer(PendingKey key, Pending failed) {
+        int attempts = failed.failedAttempts + 1;
+        if (attempts >= maxWriteAttempts) {
+            updatesAbandoned.incrementAndGet();
+            return;
+        }
+        BinaryOperator<Object> merge = bufferedTypes.get(key.entityType);
+        Pending retry = new Pending(failed.entity, failed.firstBufferedNanos, attempts);
+        pending.merge(key, retry, (newer, ignored) -> new Pending(
+                merge != null ? merge.apply(failed.entity, newer.entity) : newer.entity,
+                failed.firstBufferedNanos, attempts));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> UpdateOperation.Request<T> request(Class<T> entityType, Object entity) {
+        return new UpdateOperation.Request<>(entityType, (T) entity);
+    }
+
+    /**
+     * Gets the number of entries waiting to be written.
+     *
+     * @return the pending entry count
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Takes a snapshot of the buffering counters.
+     *
+     * @return the current metrics
+     */
+    public WriteBehindMetrics getMetrics() {
+        return new WriteBehindMetrics(updatesBuffered.get(), updatesWritten.get(), updatesCancelled.get(),
+                writeFailures.get(), updatesAbandoned.get(), flushes.get(), pending.size(), lastFlushLagNanos,
+                maxFlushLagNanos, totalFlushLagNanos.get());
+    }
+
+    /**
+     * Gets the exception thrown by the most recent write that failed.
+     *
+     * @return the exception, or null if no write has thrown
+     */
+    public RuntimeException getLastWriteFailure() {
+        return lastWriteFailure;
+    }
+
+    /**
+     * Stops the flush thread and writes everything still pending. Updates
+     * arriving afterwards are forwarded to the delegate directly.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdown();
+        flush();
+    }
+}
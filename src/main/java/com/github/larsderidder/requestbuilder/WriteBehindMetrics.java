@@ -0,0 +1,142 @@
+package com.github.larsderidder.requestbuilder;
+
+/**
+ * Point-in-time counters of a {@link WriteBehindHandler}.
+ */
+public final class WriteBehindMetrics {
+
+    private final long updatesBuffered;
+    private final long updatesWritten;
+    private final long updatesCancelled;
+    private final long writeFailures;
+    private final long updatesAbandoned;
+    private final long flushes;
+    private final int pending;
+    private final long lastFlushLagNanos;
+    private final long maxFlushLagNanos;
+    private final long totalFlushLagNanos;
+
+    WriteBehindMetrics(long updatesBuffered, long updatesWritten, long updatesCancelled,
+                       long writeFailures, long updatesAbandoned, long flushes, int pending, long lastFlushLagNanos,
+                       long maxFlushLagNanos, long totalFlushLagNanos) {
+        this.updatesBuffered = updatesBuffered;
+        this.updatesWritten = updatesWritten;
+        this.updatesCancelled = updatesCancelled;
+        this.writeFailures = writeFailures;
+        this.updatesAbandoned = updatesAbandoned;
+        this.flushes = flushes;
+        this.pending = pending;
+        this.lastFlushLagNanos = lastFlushLagNanos;
+        this.maxFlushLagNanos = maxFlushLagNanos;
+        this.totalFlushLagNanos = totalFlushLagNanos;
+    }
+
+    /**
+     * Gets the number of updates acknowledged and buffered.
+     *
+     * @return the buffered update count
+     */
+    public long getUpdatesBuffered() {
+        return updatesBuffered;
+    }
+
+    /**
+     * Gets the number of coalesced updates written to the delegate.
+     *
+     * @return the written update count
+     */
+    public long getUpdatesWritten() {
+        return updatesWritten;
+    }
+
+    /**
+     * Gets the number of buffered entries discarded by a delete of the same id.
+     *
+     * @return the cancelled entry count
+     */
+    public long getUpdatesCancelled() {
+        return updatesCancelled;
+    }
+
+    /**
+     * Gets the number of flushed writes the delegate did not report as successful.
+     *
+     * @return the failed write count
+     */
+    public long getWriteFailures() {
+        return writeFailures;
+    }
+
+    /**
+     * Gets the number of entries given up on after every write attempt threw.
+     * Their updates never reached the delegate.
+     *
+     * @return the abandoned entry count
+     */
+    public long getUpdatesAbandoned() {
+        return updatesAbandoned;
+    }
+
+    /**
+     * Gets the number of flushes that wrote at least one entry.
+     *
+     * @return the flush count
+     */
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * Gets the number of entries currently waiting to be written.
+     *
+     * @return the pending entry count
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * Gets how many buffered updates were folded into each write, on average.
+     * A ratio of 1 means nothing was coalesced.
+     *
+     * @return buffered updates per written update, or 0 if nothing was written
+     */
+    public double getCoalescingRatio() {
+        return updatesWritten == 0 ? 0 : (double) updatesBuffered / updatesWritten;
+    }
+
+    /**
+     * Gets the time between the first buffered update and its write, for the
+     * most recently written entry.
+     *
+     * @return the lag in nanoseconds
+     */
+    public long getLastFlushLagNanos() {
+        return lastFlushLagNanos;
+    }
+
+    /**
+     * Gets the largest flush lag observed.
+     *
+     * @return the lag in nanoseconds
+     */
+    public long getMaxFlushLagNanos() {
+        return maxFlushLagNanos;
+    }
+
+    /**
+     * Gets the mean flush lag over all written entries.
+     *
+     * @return the lag in nanoseconds, or 0 if nothing was written
+     */
+    public long getMeanFlushLagNanos() {
+        return updatesWritten == 0 ? 0 : totalFlushLagNanos / updatesWritten;
+    }
+
+    @Override
+    public String toString() {
+        return "WriteBehindMetrics{buffered=" + updatesBuffered + ", written=" + updatesWritten
+                + ", cancelled=" + updatesCancelled + ", failures=" + writeFailures
+                + ", abandoned=" + updatesAbandoned                + ", pending=" + pending + ", maxLagNanos=" + maxFlushLagNanos + "}";
+    }
+}
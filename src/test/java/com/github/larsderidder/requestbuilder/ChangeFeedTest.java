@@ -0,0 +1,197 @@
+package com.github.larsderidder.requestbuilder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the change feed ring buffer and publishing handler.
+ */
+public class ChangeFeedTest {
+
+    static class Note {
+        private final String id;
+        private final String postId;
+
+        Note(String id, String postId) {
+            this.id = id;
+            this.postId = postId;
+        }
+
+        String getId() { return id; }
+        String getPostId() { return postId; }
+    }
+
+    /** Handler that accepts everything except entities named "bad". */
+    static class AcceptingHandler implements OperationHandler {
+        @Override
+        public <T> CreateOperation.Response<T> handle(CreateOperation.Request<T> request) {
+            return new CreateOperation.Response<>(OperationResponse.Status.SUCCESS, request.getEntity());
+        }
+
+        @Override
+        public <T> QueryOperation.Response<T> handle(QueryOperation.Request<T> request) {
+            return new QueryOperation.Response<>(OperationResponse.Status.SUCCESS);
+        }
+
+        @Override
+        public <T> UpdateOperation.Response<T> handle(UpdateOperation.Request<T> request) {
+            return new UpdateOperation.Response<>(OperationResponse.Status.SUCCESS);
+        }
+
+        @Override
+        public <T> DeleteOperation.Response<T> handle(DeleteOperation.Request<T> request) {
+            return "bad".equals(request.getId())
+                    ? new DeleteOperation.Response<>(OperationResponse.Status.FAILURE, "not found")
+                    : new DeleteOperation.Response<>(OperationResponse.Status.SUCCESS);
+        }
+    }
+
+    private static void publish(ChangeFeed feed, int count) {
+        for (int i = 0; i < count; i++) {
+            feed.publish(ChangeEvent.Type.UPDATE, Note.class, "n" + i, null, null, null);
+        }
+    }
+
+    @Test
+    public void testEverySubscriberSeesEveryEvent() {
+        ChangeFeed feed = new ChangeFeed(8);
+        ChangeFeed.Subscription first = feed.subscribe(ChangeFeed.Backpressure.BLOCK);
+        ChangeFeed.Subscription second = feed.subscribe(ChangeFeed.Backpressure.DROP);
+
+        publish(feed, 5);
+
+        List<ChangeEvent> firstEvents = new ArrayList<>();
+        List<ChangeEvent> secondEvents = new ArrayList<>();
+        assertEquals(5, first.poll(firstEvents::add));
+        assertEquals(3, second.poll(secondEvents::add, 3));
+        assertEquals(2, second.getLag());
+        assertEquals(2, second.poll(secondEvents::add));
+
+        assertEquals("n0", firstEvents.get(0).getId());
+        assertEquals(4, firstEvents.get(4).getSequence());
+        assertEquals(5, secondEvents.size());
+        assertEquals(0, first.poll(firstEvents::add));
+    }
+
+    @Test
+    public void testDropSubscriberSkipsOverwrittenEvents() {
+        ChangeFeed feed = new ChangeFeed(4, ChangeFeed.ProducerType.SINGLE);
+        ChangeFeed.Subscription subscription = feed.subscribe(ChangeFeed.Backpressure.DROP);
+
+        publish(feed, 10);
+
+        List<ChangeEvent> events = new ArrayList<>();
+        subscription.poll(events::add);
+
+        assertEquals(4, events.size());
+        assertEquals(6, events.get(0).getSequence());
+        assertEquals(6, subscription.getDroppedCount());
+    }
+
+    @Test
+    public void testFailSubscriberIsClosedWhenOverrun() {
+        ChangeFeed feed = new ChangeFeed(4);
+        ChangeFeed.Subscription subscription = feed.subscribe(ChangeFeed.Backpressure.FAIL);
+
+        publish(feed, 6);
+
+        try {
+            subscription.poll(event -> { });
+            fail("Expected overrun");
+        } catch (IllegalStateException expected) {
+            assertTrue(subscription.isFailed());
+            assertTrue(subscription.isClosed());
+        }
+    }
+
+    @Test
+    public void testBlockSubscriberHoldsBackProducer() throws Exception {
+        ChangeFeed feed = new ChangeFeed(2);
+        ChangeFeed.Subscription subscription = feed.subscribe(ChangeFeed.Backpressure.BLOCK);
+        publish(feed, 2);
+
+        CountDownLatch published = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            publish(feed, 1);
+            published.countDown();
+        });
+        producer.start();
+
+        assertFalse(published.await(50, TimeUnit.MILLISECONDS));
+        assertEquals(1, subscription.poll(event -> { }, 1));
+        assertTrue(published.await(5, TimeUnit.SECONDS));
+        producer.join();
+        assertEquals(2, subscription.poll(event -> { }));
+    }
+
+    @Test
+    public void testConcurrentProducersNeverOverwriteNewerEvents() throws Exception {
+        int producers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            for (int round = 0; round < 500; round++) {
+                ChangeFeed feed = new ChangeFeed(2);
+                ChangeFeed.Subscription subscription = feed.subscribe(ChangeFeed.Backpressure.DROP);
+                CyclicBarrier start = new CyclicBarrier(producers);
+                List<Future<?>> results = new ArrayList<>();
+                for (int i = 0; i < producers; i++) {
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        publish(feed, 2);
+                        return null;
+                    }));
+                }
+                for (Future<?> result : results) {
+                    result.get();
+                }
+
+                List<ChangeEvent> events = new ArrayList<>();
+                subscription.poll(events::add);
+                assertEquals("round " + round, 2, events.size());
+                assertEquals(2 * producers - 1, events.get(1).getSequence());
+                assertEquals(2 * producers - 2, subscription.getDroppedCount());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testHandlerPublishesSuccessfulMutations() {
+        ChangeFeed feed = new ChangeFeed(16);
+        ChangeFeed.Subscription subscription = feed.subscribe(ChangeFeed.Backpressure.BLOCK);
+        EntityMappings mappings = new EntityMappings()
+                .register(EntityMapping.of(Note.class).id(Note::getId).parentId(Note::getPostId).build());
+        OperationHandler handler = new ChangeFeedHandler(new AcceptingHandler(), feed, mappings);
+
+        Note note = new Note("note-1", "post-1");
+        handler.handle(OperationRequest.create(Note.class).entity(note).build());
+        handler.handle(OperationRequest.query(Note.class).id("note-1").build());
+        handler.handle(OperationRequest.update(Note.class).entity(note).build());
+        handler.handle(OperationRequest.delete(Note.class).id("bad").build());
+        handler.handle(OperationRequest.delete(Note.class).id("note-1").parentId("post-1").build());
+
+        List<ChangeEvent> events = new ArrayList<>();
+        subscription.poll(events::add);
+
+        assertEquals(3, events.size());
+        assertEquals(ChangeEvent.Type.CREATE, events.get(0).getType());
+        assertEquals("note-1", events.get(0).getId());
+        assertEquals("post-1", events.get(0).getParentId());
+        assertSame(note, events.get(0).getEntity());
+        assertEquals(ChangeEvent.Type.UPDATE, events.get(1).getType());
+        assertEquals(ChangeEvent.Type.DELETE, events.get(2).getType());
+        assertEquals(Note.class, events.get(2).getEntityType());
+        assertNull(events.get(2).getEntity());
+    }
+}
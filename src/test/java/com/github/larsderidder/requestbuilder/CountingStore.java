@@ -0,0 +1,35 @@
+package com.github.larsderidder.requestbuilder;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory store of {@link TestRecord}s that counts the requests reaching it,
+ * for tests of decorators that should keep requests away from the store.
+ */
+class CountingStore extends ForwardingOperationHandler {
+
+    final EntityMappings mappings;
+    final AtomicInteger creates = new AtomicInteger();
+    final AtomicInteger queries = new AtomicInteger();
+
+    CountingStore() {
+        this(TestRecord.mappings());
+    }
+
+    private CountingStore(EntityMappings mappings) {
+        super(new InMemoryOperationHandler(mappings));
+        this.mappings = mappings;
+    }
+
+    @Override
+    public <T> CreateOperation.Response<T> handle(CreateOperation.Request<T> request) {
+        creates.incrementAndGet();
+        return super.handle(request);
+    }
+
+    @Override
+    public <T> QueryOperation.Response<T> handle(QueryOperation.Request<T> request) {
+        queries.incrementAndGet();
+        return super.handle(request);
+    }
+}
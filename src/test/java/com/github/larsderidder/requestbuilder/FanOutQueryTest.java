@@ -0,0 +1,226 @@
+package com.github.larsderidder.requestbuilder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for scatter-gather queries.
+ */
+public class FanOutQueryTest {
+
+    static class Order {
+        private final String id;
+        private final String customerId;
+        private final int total;
+
+        Order(String id, String customerId, int total) {
+            this.id = id;
+            this.customerId = customerId;
+            this.total = total;
+        }
+
+        String getId() { return id; }
+        String getCustomerId() { return customerId; }
+        int getTotal() { return total; }
+    }
+
+    private InMemoryOperationHandler store;
+    private List<String> customers;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryOperationHandler(new EntityMappings()
+                .register(EntityMapping.of(Order.class).id(Order::getId).parentId(Order::getCustomerId).build()));
+        customers = new ArrayList<>();
+        for (int c = 0; c < 50; c++) {
+            customers.add("customer-" + c);
+            for (int o = 0; o < 4; o++) {
+                store.handle(OperationRequest.create(Order.class)
+                        .entity(new Order(c + "-" + o, "customer-" + c, c * 10 + o))
+                        .build());
+            }
+        }
+    }
+
+    @Test
+    public void testMergesAllShardsInIdOrder() {
+        QueryOperation.Response<Order> response = FanOutQuery.builder(Order.class)
+                .parentIds(customers)
+                .concurrency(4)
+                .build()
+                .execute(store);
+
+        assertTrue(response.isSuccess());
+        assertEquals(200, response.size());
+        assertEquals("0-0", response.getResults().get(0).getId());
+        assertEquals("49-0", response.getResults().get(196).getId());
+        assertNull(response.getMetadata(FanOutResult.class));
+    }
+
+    @Test
+    public void testTopKWithOrdering() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            QueryOperation.Response<Order> response = FanOutQuery.builder(Order.class)
+                    .parentIds(customers)
+                    .orderBy(Comparator.comparingInt(Order::getTotal).reversed())
+                    .limit(5)
+                    .executor(executor)
+                    .build()
+                    .execute(store);
+
+            assertEquals(5, response.size());
+            assertEquals(493, response.getResults().get(0).getTotal());
+            assertEquals(490, response.getResults().get(3).getTotal());
+            assertEquals(483, response.getResults().get(4).getTotal());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCountSumsShards() {
+        FanOutQuery<Order> query = FanOutQuery.builder(Order.class)
+                .parentIds(customers)
+                .template(QueryOperation.Request.Builder::count)
+                .build();
+
+        QueryOperation.Response<Order> response = query.execute(store);
+        assertEquals(200, response.getCount());
+        assertTrue(response.isEmpty());
+        assertTrue(query.requestFor("customer-1").isCountOnly());
+        assertEquals("customer-1", query.requestFor("customer-1").getParentId());
+    }
+
+    @Test
+    public void testExistsReportsAtMostOne() {
+        CountDownLatch allStarted = new CountDownLatch(3);
+        OperationHandler together = new ForwardingOperationHandler(store) {
+            @Override
+            public <T> QueryOperation.Response<T> handle(QueryOperation.Request<T> request) {
+                allStarted.countDown();
+                try {
+                    allStarted.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return super.handle(request);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        QueryOperation.Response<Order> response;
+        try {
+            response = FanOutQuery.builder(Order.class)
+                    .parentIds(customers.subList(0, 3))
+                    .template(QueryOperation.Request.Builder::exists)
+                    .concurrency(3)
+                    .executor(executor)
+                    .build()
+                    .execute(together);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, response.getCount());
+        assertTrue(response.exists());
+    }
+
+    @Test
+    public void testCallerTraceIsSetOnShardRequests() {
+        List<TraceContext> seen = new ArrayList<>();
+        OperationHandler recording = new ForwardingOperationHandler(store) {
+            @Override
+            public <T> QueryOperation.Response<T> handle(QueryOperation.Request<T> request) {
+                synchronized (seen) {
+                    seen.add(request.getTraceContext());
+                }
+                return super.handle(request);
+            }
+        };
+        Tracer tracer = new Tracer(1.0, null);
+        TraceContext span = tracer.startTrace();
+        TraceContext previous = tracer.enter(span);
+        try {
+            FanOutQuery.builder(Order.class).parentIds(customers.subList(0, 3)).build().execute(recording);
+        } finally {
+            tracer.exit(previous);
+        }
+        assertEquals(Arrays.asList(span, span, span), seen);
+    }
+
+    @Test
+    public void testConcurrencyLimit() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        OperationHandler tracking = new ForwardingOperationHandler(store) {
+            @Override
+            public <T> QueryOperation.Response<T> handle(QueryOperation.Request<T> request) {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(1);
+                    return super.handle(request);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            FanOutQuery.builder(Order.class).parentIds(customers).concurrency(3).executor(executor).build()
+                    .execute(tracking);
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(peak.get() <= 3);
+    }
+
+    @Test
+    public void testPartialResultsOnShardFailure() {
+        OperationHandler flaky = new ForwardingOperationHandler(store) {
+            @Override
+            public <T> QueryOperation.Response<T> handle(QueryOperation.Request<T> request) {
+                if ("customer-3".equals(request.getParentId())) {
+                    throw new IllegalStateException("shard offline");
+                }
+                if ("customer-7".equals(request.getParentId())) {
+                    QueryOperation.Response<T> failure = new QueryOperation.Response<>(OperationResponse.Status.FAILURE);
+                    failure.setMessage("timeout");
+                    return failure;
+                }
+                return super.handle(request);
+            }
+        };
+
+        QueryOperation.Response<Order> response = FanOutQuery.builder(Order.class)
+                .parentIds(customers)
+                .build()
+                .execute(flaky);
+
+        assertTrue(response.isSuccess());
+        assertEquals(192, response.size());
+        FanOutResult fanOut = response.getMetadata(FanOutResult.class);
+        assertTrue(fanOut.isPartial());
+        assertEquals(50, fanOut.getShardCount());
+        assertEquals(2, fanOut.getFailures().size());
+
+        QueryOperation.Response<Order> allFailed = FanOutQuery.builder(Order.class)
+                .parentIds(Arrays.asList("customer-3", "customer-7"))
+                .build()
+                .execute(flaky);
+        assertTrue(allFailed.isFailure());
+        assertEquals(2, allFailed.getMetadata(FanOutResult.class).getFailures().size());
+    }
+}
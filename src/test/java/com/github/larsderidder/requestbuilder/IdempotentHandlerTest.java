@@ -0,0 +1,203 @@
+package com.github.larsderidder.requestbuilder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for idempotency-key deduplication.
+ */
+public class IdempotentHandlerTest {
+
+    private final CountingStore store = new CountingStore();
+
+    private static CreateOperation.Request<TestRecord> create(String id, String key) {
+        return OperationRequest.create(TestRecord.class).entity(new TestRecord(id)).idempotencyKey(key).build();
+    }
+
+    @Test
+    public void testRetriesGetOriginalResponse() {
+        IdempotentHandler handler = IdempotentHandler.builder(store).build();
+
+        CreateOperation.Response<TestRecord> first = handler.handle(create("p1", "k1"));
+        CreateOperation.Response<TestRecord> retry = handler.handle(create("p1", "k1"));
+
+        assertTrue(first.isSuccess());
+        assertNotSame(first, retry);
+        assertSame(first.getEntity(), retry.getEntity());
+        assertEquals(first.getVersion(), retry.getVersion());
+        assertEquals(1, store.creates.get());
+        assertEquals(1, handler.getDeduplicatedCount());
+
+        handler.handle(create("p2", "k2"));
+        handler.handle(create("p3", null));
+        handler.handle(create("p3", null));
+        assertEquals(4, store.creates.get());
+        assertEquals(2, handler.size());
+    }
+
+    @Test
+    public void testKeysExpireAfterWindow() throws InterruptedException {
+        IdempotentHandler handler = IdempotentHandler.builder(store)
+                .window(1, TimeUnit.MILLISECONDS)
+                .build();
+
+        handler.handle(create("p1", "k1"));
+        Thread.sleep(5);
+        handler.handle(create("p1", "k1"));
+        assertEquals(2, store.creates.get());
+        assertEquals(0, handler.getDeduplicatedCount());
+    }
+
+    @Test
+    public void testOldestKeysEvictedBeyondMaxEntries() {
+        IdempotentHandler handler = IdempotentHandler.builder(store).maxEntries(10).build();
+
+        for (int i = 0; i < 50; i++) {
+            handler.handle(create("p" + i, "k" + i));
+        }
+        assertEquals(10, handler.size());
+
+        handler.handle(create("p49", "k49"));
+        assertEquals(50, store.creates.get());
+        handler.handle(create("p0", "k0"));
+        assertEquals(51, store.creates.get());
+    }
+
+    @Test
+    public void testInFlightKeyDoesNotHoldBackEviction() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        OperationHandler slowStore = new ForwardingOperationHandler(store) {
+            @Override
+            public <T> CreateOperation.Response<T> handle(CreateOperation.Request<T> request) {
+                if ("slow".equals(request.getIdempotencyKey())) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.handle(request);
+            }
+        };
+        IdempotentHandler handler = IdempotentHandler.builder(slowStore).maxEntries(10).build();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<CreateOperation.Response<TestRecord>> blocked = executor.submit(() -> handler.handle(create("s", "slow")));
+            while (handler.size() == 0) {
+                Thread.sleep(1);
+            }
+            for (int i = 0; i < 50; i++) {
+                handler.handle(create("p" + i, "k" + i));
+            }
+            assertEquals(10, handler.size());
+
+            release.countDown();
+            assertTrue(blocked.get().isSuccess());
+            assertEquals(10, handler.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentDuplicatesShareOneExecution() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        OperationHandler slowStore = new ForwardingOperationHandler(store) {
+            @Override
+            public <T> CreateOperation.Response<T> handle(CreateOperation.Request<T> request) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.handle(request);
+            }
+        };
+        IdempotentHandler handler = IdempotentHandler.builder(slowStore).build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<CreateOperation.Response<TestRecord>>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> handler.handle(create("p1", "k1"))));
+            }
+            Thread.sleep(20);
+            release.countDown();
+            for (Future<CreateOperation.Response<TestRecord>> result : results) {
+                assertSame(results.get(0).get().getEntity(), result.get().getEntity());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, store.creates.get());
+        assertEquals(3, handler.getDeduplicatedCount());
+    }
+
+    @Test
+    public void testFailedAttemptIsForgotten() {
+        AtomicInteger attempts = new AtomicInteger();
+        OperationHandler flaky = new ForwardingOperationHandler(store) {
+            @Override
+            public <T> CreateOperation.Response<T> handle(CreateOperation.Request<T> request) {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IllegalStateException("connection reset");
+                }
+                return super.handle(request);
+            }
+        };
+        IdempotentHandler handler = IdempotentHandler.builder(flaky).build();
+
+        try {
+            handler.handle(create("p1", "k1"));
+            fail("Expected the first attempt to throw");
+        } catch (IllegalStateException expected) {
+            assertEquals(0, handler.size());
+        }
+        assertTrue(handler.handle(create("p1", "k1")).isSuccess());
+        assertEquals(1, store.creates.get());
+    }
+
+    @Test
+    public void testKeysScopedByOperation() {
+        IdempotentHandler handler = IdempotentHandler.builder(store).build();
+
+        handler.handle(create("p1", "k1"));
+        UpdateOperation.Response<TestRecord> update = handler.handle(OperationRequest.update(TestRecord.class)
+                .entity(new TestRecord("p1"))
+                .idempotencyKey("k1")
+                .build());
+        assertTrue(update.isSuccess());
+        assertEquals(0, handler.getDeduplicatedCount());
+    }
+
+    @Test
+    public void testDuplicatesGetTheirOwnResponse() {
+        OperationDispatcher dispatcher = new OperationDispatcher(IdempotentHandler.builder(store).build());
+        dispatcher.setCollectStats(true);
+
+        OperationResponse first = dispatcher.dispatch(create("p1", "k1"));
+        OperationResponse second = dispatcher.dispatch(create("p1", "k1"));
+        OperationResponse third = dispatcher.dispatch(create("p1", "k1"));
+
+        assertNotSame(first, second);
+        assertNotSame(second, third);
+        assertEquals(first.getVersion(), third.getVersion());
+        assertEquals(1, first.getAllMetadata().size());
+        assertEquals(1, third.getAllMetadata().size());
+        assertEquals(OperationStats.CacheResult.NONE, first.getMetadata(OperationStats.class).getCacheResult());
+        assertEquals(OperationStats.CacheResult.HIT, second.getMetadata(OperationStats.class).getCacheResult());
+        assertEquals(OperationStats.CacheResult.HIT, third.getMetadata(OperationStats.class).getCacheResult());
+        assertSame(((CreateOperation.Response<?>) first).getEntity(), ((CreateOperation.Response<?>) third).getEntity());
+    }
+}
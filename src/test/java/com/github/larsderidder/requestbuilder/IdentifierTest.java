@@ -0,0 +1,93 @@
+package com.github.larsderidder.requestbuilder;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for compact identifiers and the interning pool.
+ */
+public class IdentifierTest {
+
+    @Test
+    public void testNumericIds() {
+        Identifier parsed = Identifier.of("42");
+        assertTrue(parsed.isNumeric());
+        assertEquals(42L, parsed.longValue());
+        assertEquals(Identifier.of(42), parsed);
+        assertEquals(Identifier.of(42).hashCode(), parsed.hashCode());
+        assertEquals("42", Identifier.of(42).toString());
+
+        assertEquals(Long.MAX_VALUE, Identifier.of(Long.toString(Long.MAX_VALUE)).longValue());
+        assertFalse(Identifier.of("9223372036854775808").isNumeric());
+        assertFalse(Identifier.of("042").isNumeric());
+        assertFalse(Identifier.of("-1").isNumeric());
+        assertNotEquals(Identifier.of("042"), Identifier.of(42));
+        assertTrue(Identifier.of("0").isNumeric());
+    }
+
+    @Test
+    public void testUuidIds() {
+        UUID uuid = UUID.randomUUID();
+        Identifier parsed = Identifier.of(uuid.toString());
+        assertTrue(parsed.isUuid());
+        assertEquals(uuid, parsed.uuidValue());
+        assertEquals(Identifier.of(uuid), parsed);
+        assertEquals(uuid.toString(), Identifier.of(uuid).toString());
+
+        assertFalse(Identifier.of("123E4567-E89B-12D3-A456-426614174000").isUuid());
+        assertTrue(Identifier.of("123e4567-e89b-12d3-a456-426614174000").isUuid());
+    }
+
+    @Test
+    public void testStringIds() {
+        Identifier id = Identifier.of("customer-456");
+        assertFalse(id.isNumeric());
+        assertFalse(id.isUuid());
+        assertEquals("customer-456", id.toString());
+        assertEquals(Identifier.of("customer-456"), id);
+        assertNotEquals(Identifier.of("customer-457"), id);
+        assertNull(Identifier.of((String) null));
+        try {
+            id.longValue();
+            fail("Expected a non-numeric identifier to refuse longValue");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testInterning() {
+        IdentifierPool pool = new IdentifierPool(2);
+        Identifier first = pool.intern("customer-1");
+        assertSame(first, pool.intern("customer-1"));
+        assertSame(first, pool.intern(Identifier.of("customer-1")));
+        assertSame(pool.intern("17"), pool.intern(Identifier.of(17)));
+        assertEquals(2, pool.size());
+
+        Identifier overflow = pool.intern("customer-2");
+        assertEquals(Identifier.of("customer-2"), overflow);
+        assertNotSame(overflow, pool.intern("customer-2"));
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void testInterningPrimitivesBuildsNoString() throws Exception {
+        IdentifierPool pool = new IdentifierPool(10);
+        Identifier numeric = Identifier.of(42);
+        Identifier uuid = Identifier.of(UUID.randomUUID());
+
+        assertSame(numeric, pool.intern(numeric));
+        assertSame(numeric, pool.intern(Identifier.of(42)));
+        assertSame(uuid, pool.intern(uuid));
+
+        Field text = Identifier.class.getDeclaredField("text");
+        text.setAccessible(true);
+        assertNull(text.get(numeric));
+        assertNull(text.get(uuid));
+        assertSame(numeric, pool.intern("42"));
+    }
+}
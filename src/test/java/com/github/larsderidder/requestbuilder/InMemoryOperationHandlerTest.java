@@ -0,0 +1,275 @@
+package com.github.larsderidder.requestbuilder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the in-memory handler.
+ */
+public class InMemoryOperationHandlerTest {
+
+    static class Comment {
+        private final String id;
+        private final String postId;
+        private final String text;
+
+        Comment(String id, String postId, String text) {
+            this.id = id;
+            this.postId = postId;
+            this.text = text;
+        }
+
+        String getId() { return id; }
+        String getPostId() { return postId; }
+        String getText() { return text; }
+    }
+
+    private InMemoryOperationHandler handler;
+
+    @Before
+    public void setUp() {
+        handler = new InMemoryOperationHandler(new EntityMappings()
+                .register(EntityMapping.of(Comment.class).id(Comment::getId).parentId(Comment::getPostId).build()));
+    }
+
+    private CreateOperation.Response<Comment> create(String id, String postId) {
+        return handler.handle(OperationRequest.create(Comment.class).entity(new Comment(id, postId, id)).build());
+    }
+
+    @Test
+    public void testCreateQueryUpdateDelete() {
+        assertTrue(create("c1", "post-1").isSuccess());
+        assertTrue(create("c1", "post-1").isFailure());
+
+        QueryOperation.Response<Comment> found = handler.handle(OperationRequest.query(Comment.class).id("c1").build());
+        assertEquals(1, found.size());
+
+        assertTrue(handler.handle(OperationRequest.update(Comment.class)
+                .entity(new Comment("c1", "post-2", "edited")).build()).isSuccess());
+        assertTrue(handler.handle(OperationRequest.query(Comment.class).parentId("post-1").build()).isEmpty());
+        assertEquals("edited", handler.handle(OperationRequest.query(Comment.class).parentId("post-2").build())
+                .getResults().get(0).getText());
+
+        DeleteOperation.Response<Comment> deleted = handler.handle(OperationRequest.delete(Comment.class).id("c1").build());
+        assertTrue(deleted.isSuccess());
+        assertEquals(1, deleted.getAffectedRows());
+        assertTrue(handler.handle(OperationRequest.delete(Comment.class).id("c1").build()).isFailure());
+    }
+
+    @Test
+    public void testConditionalOperations() {
+        String version = create("c1", "post-1").getVersion();
+
+        QueryOperation.Response<Comment> unchanged = handler.handle(OperationRequest.query(Comment.class)
+                .id("c1").ifNoneMatch(version).build());
+        assertTrue(unchanged.isNotModified());
+        assertTrue(unchanged.isEmpty());
+
+        UpdateOperation.Response<Comment> updated = handler.handle(OperationRequest.update(Comment.class)
+                .entity(new Comment("c1", "post-1", "first")).ifVersion(version).build());
+        assertTrue(updated.isSuccess());
+
+        UpdateOperation.Response<Comment> stale = handler.handle(OperationRequest.update(Comment.class)
+                .entity(new Comment("c1", "post-1", "second")).ifVersion(version).build());
+        assertTrue(stale.isConflict());
+        assertEquals(updated.getVersion(), stale.getVersion());
+
+        assertTrue(handler.handle(OperationRequest.delete(Comment.class)
+                .id("c1").ifVersion(version).build()).isConflict());
+        assertTrue(handler.handle(OperationRequest.delete(Comment.class)
+                .id("c1").ifVersion(updated.getVersion()).build()).isSuccess());
+    }
+
+    @Test
+    public void testDeleteAllWithParent() {
+        for (int i = 0; i < 5; i++) {
+            create("c" + i, "post-456");
+        }
+        create("other", "post-789");
+
+        DeleteOperation.Response<Comment> capped = handler.handle(OperationRequest.delete(Comment.class)
+                .allWithParent("post-456")
+                .maxRows(3)
+                .build());
+        assertTrue(capped.isSuccess());
+        assertEquals(3, capped.getAffectedRows());
+        assertTrue(((AffectedRows) capped.getMetadata()).isTruncated());
+
+        DeleteOperation.Response<Comment> rest = handler.handle(OperationRequest.delete(Comment.class)
+                .allWithParent("post-456")
+                .build());
+        assertEquals(2, rest.getAffectedRows());
+        assertFalse(((AffectedRows) rest.getMetadata()).isTruncated());
+
+        assertEquals(1, handler.size(Comment.class));
+        assertEquals(0, handler.handle(OperationRequest.delete(Comment.class)
+                .allWithParent("post-456").build()).getAffectedRows());
+    }
+
+    @Test
+    public void testCountAndExists() {
+        for (int i = 0; i < 4; i++) {
+            create("c" + i, "post-1");
+        }
+        handler.handle(OperationRequest.create(Comment.class).entity(new Comment("x", "post-2", "x")).build());
+
+        assertEquals(4, handler.handle(OperationRequest.query(Comment.class)
+                .parentId("post-1").count().build()).getCount());
+        assertEquals(5, handler.handle(OperationRequest.query(Comment.class).count().build()).getCount());
+        assertEquals(1, handler.handle(OperationRequest.query(Comment.class)
+                .parentId("post-1").exists().build()).getCount());
+        assertTrue(handler.handle(OperationRequest.query(Comment.class).id("x").exists().build()).exists());
+        assertFalse(handler.handle(OperationRequest.query(Comment.class)
+                .id("x").parentId("post-1").exists().build()).exists());
+        assertFalse(handler.handle(OperationRequest.query(Comment.class)
+                .parentId("post-9").exists().build()).exists());
+    }
+
+    private List<String> textsAt(Snapshot snapshot, String postId) {
+        List<String> texts = new ArrayList<>();
+        for (Comment comment : handler.handle(OperationRequest.query(Comment.class)
+                .parentId(postId).snapshot(snapshot).build()).getResults()) {
+            texts.add(comment.getText());
+        }
+        texts.sort(null);
+        return texts;
+    }
+
+    @Test
+    public void testSnapshotReads() {
+        create("c1", "post-1");
+        create("c2", "post-1");
+        create("c3", "post-1");
+
+        try (Snapshot snapshot = handler.openSnapshot()) {
+            handler.handle(OperationRequest.update(Comment.class).entity(new Comment("c1", "post-1", "edited")).build());
+            handler.handle(OperationRequest.update(Comment.class).entity(new Comment("c2", "post-2", "c2")).build());
+            handler.handle(OperationRequest.delete(Comment.class).id("c3").build());
+            create("c4", "post-1");
+
+            assertEquals(Arrays.asList("c1", "c2", "c3"), textsAt(snapshot, "post-1"));
+            assertTrue(textsAt(snapshot, "post-2").isEmpty());
+            assertEquals(3, handler.handle(OperationRequest.query(Comment.class)
+                    .snapshot(snapshot).count().build()).getCount());
+            assertEquals("c3", handler.handle(OperationRequest.query(Comment.class)
+                    .id("c3").snapshot(snapshot).build()).getResults().get(0).getText());
+            assertTrue(handler.handle(OperationRequest.query(Comment.class)
+                    .id("c4").snapshot(snapshot).build()).isEmpty());
+
+            assertEquals(2, handler.handle(OperationRequest.query(Comment.class).parentId("post-1").build()).size());
+            assertEquals("edited", handler.handle(OperationRequest.query(Comment.class).id("c1").build())
+                    .getResults().get(0).getText());
+            assertEquals(3, handler.retainedCount(Comment.class));
+        }
+        assertEquals(0, handler.retainedCount(Comment.class));
+    }
+
+    @Test
+    public void testClosedSnapshotRejected() {
+        create("c1", "post-1");
+        Snapshot snapshot = handler.openSnapshot();
+        handler.handle(OperationRequest.delete(Comment.class).id("c1").build());
+        snapshot.close();
+        snapshot.close();
+
+        QueryOperation.Response<Comment> response = handler.handle(OperationRequest.query(Comment.class)
+                .id("c1").snapshot(snapshot.getToken()).build());
+        assertTrue(response.isFailure());
+        assertEquals(0, handler.retainedCount(Comment.class));
+        assertTrue(create("c1", "post-1").isSuccess());
+    }
+
+    @Test
+    public void testSnapshotRepeatableUnderConcurrentWrites() throws InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            create("c" + i, "post-1");
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            int round = 0;
+            while (running.get()) {
+                String id = "c" + (round % 20);
+                handler.handle(OperationRequest.update(Comment.class)
+                        .entity(new Comment(id, round % 3 == 0 ? "post-2" : "post-1", id + "@" + round)).build());
+                round++;
+            }
+        });
+        writer.start();
+        try {
+            for (int attempt = 0; attempt < 20; attempt++) {
+                try (Snapshot snapshot = handler.openSnapshot()) {
+                    List<String> first = textsAt(snapshot, "post-1");
+                    Thread.yield();
+                    assertEquals(first, textsAt(snapshot, "post-1"));
+                    assertEquals(textsAt(snapshot, "post-2").size() + first.size(), handler.handle(
+                            OperationRequest.query(Comment.class).snapshot(snapshot).count().build()).getCount());
+                }
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+        try (Snapshot snapshot = handler.openSnapshot()) {
+            assertEquals(20, handler.handle(OperationRequest.query(Comment.class)
+                    .snapshot(snapshot).count().build()).getCount());
+        }
+        assertEquals(0, handler.retainedCount(Comment.class));
+    }
+
+    @Test
+    public void testSnapshotSeesEntityAcrossDeleteAndRecreate() throws Exception {
+        // Enough other entities that a full scan leaves a window for the writer.
+        for (int i = 0; i < 2000; i++) {
+            create("other-" + i, "post-2");
+        }
+        create("c1", "post-1");
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            int round = 0;
+            while (running.get()) {
+                handler.handle(OperationRequest.delete(Comment.class).id("c1").build());
+                handler.handle(OperationRequest.create(Comment.class)
+                        .entity(new Comment("c1", "post-1", "c1@" + round++)).build());
+            }
+        });
+        writer.start();
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int reader = 0; reader < 4; reader++) {
+                results.add(readers.submit(() -> {
+                    for (int attempt = 0; attempt < 100; attempt++) {
+                        try (Snapshot snapshot = handler.openSnapshot()) {
+                            QueryOperation.Request<Comment> all = OperationRequest.query(Comment.class)
+                                    .snapshot(snapshot).count().build();
+                            long count = handler.handle(all).getCount();
+                            for (int read = 0; read < 5; read++) {
+                                assertEquals(count, handler.handle(all).getCount());
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            readers.shutdown();
+            running.set(false);
+            writer.join();
+        }
+        handler.openSnapshot().close();
+        assertEquals(0, handler.retainedCount(Comment.class));
+    }
+}
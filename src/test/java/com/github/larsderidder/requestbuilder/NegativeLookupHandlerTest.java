@@ -0,0 +1,191 @@
+package com.github.larsderidder.requestbuilder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the Bloom-filter negative lookup cache.
+ */
+public class NegativeLookupHandlerTest {
+
+    private final CountingStore store = new CountingStore();
+
+    private static QueryOperation.Request<TestRecord> byId(String id) {
+        return OperationRequest.query(TestRecord.class).id(id).build();
+    }
+
+    @Test
+    public void testAbsentIdsSkipTheStore() {
+        store.handle(OperationRequest.create(TestRecord.class).entity(new TestRecord("existing")).build());
+        NegativeLookupHandler handler = NegativeLookupHandler.builder(store, store.mappings)
+                .filter(TestRecord.class, 1000)
+                .executor(Runnable::run)
+                .build();
+
+        assertEquals(1, handler.handle(byId("existing")).size());
+        assertEquals(2, store.queries.get());
+        assertEquals(1, handler.getRebuildCount(TestRecord.class));
+
+        int before = store.queries.get();
+        for (int i = 0; i < 100; i++) {
+            QueryOperation.Response<TestRecord> response = handler.handle(byId("missing-" + i));
+            assertTrue(response.isSuccess());
+            assertTrue(response.isEmpty());
+        }
+        assertTrue(store.queries.get() - before < 10);
+        assertTrue(handler.getFilteredCount(TestRecord.class) > 90);
+        assertFalse(handler.handle(OperationRequest.query(TestRecord.class).id("missing-0").exists().build()).exists());
+    }
+
+    @Test
+    public void testCreatesAndDeletesKeepFilterCurrent() {
+        NegativeLookupHandler handler = NegativeLookupHandler.builder(store, store.mappings)
+                .filter(TestRecord.class, 1000)
+                .executor(Runnable::run)
+                .build();
+
+        assertTrue(handler.handle(byId("new")).isEmpty());
+        handler.handle(OperationRequest.create(TestRecord.class).entity(new TestRecord("new")).build());
+        assertEquals(1, handler.handle(byId("new")).size());
+
+        handler.handle(OperationRequest.delete(TestRecord.class).id("new").build());
+        int before = store.queries.get();
+        assertTrue(handler.handle(byId("new")).isEmpty());
+        assertEquals(before, store.queries.get());
+    }
+
+    @Test
+    public void testRebuildsWhenOverCapacity() {
+        NegativeLookupHandler handler = NegativeLookupHandler.builder(store, store.mappings)
+                .filter(TestRecord.class, 10)
+                .executor(Runnable::run)
+                .build();
+        handler.handle(byId("warm-up"));
+
+        for (int i = 0; i < 50; i++) {
+            handler.handle(OperationRequest.create(TestRecord.class).entity(new TestRecord("link-" + i)).build());
+        }
+        handler.handle(byId("link-0"));
+
+        assertEquals(2, handler.getRebuildCount(TestRecord.class));
+        for (int i = 0; i < 50; i++) {
+            assertEquals(1, handler.handle(byId("link-" + i)).size());
+        }
+    }
+
+    @Test
+    public void testFailsOpenWhenStoreCannotListIds() throws InterruptedException {
+        store.handle(OperationRequest.create(TestRecord.class).entity(new TestRecord("existing")).build());
+        AtomicInteger loadAllFailures = new AtomicInteger(2);
+        AtomicInteger loadAlls = new AtomicInteger();
+        OperationHandler flaky = new ForwardingOperationHandler(store) {
+            @Override
+            public <T> QueryOperation.Response<T> handle(QueryOperation.Request<T> request) {
+                if (!request.hasId()) {
+                    loadAlls.incrementAndGet();
+                    int failure = loadAllFailures.getAndDecrement();
+                    if (failure == 2) {
+                        return new QueryOperation.Response<>(OperationResponse.Status.FAILURE);
+                    }
+                    if (failure == 1) {
+                        throw new IllegalStateException("unavailable");
+                    }
+                }
+                return super.handle(request);
+            }
+        };
+        NegativeLookupHandler handler = NegativeLookupHandler.builder(flaky, store.mappings)
+                .filter(TestRecord.class, 1000)
+                .executor(Runnable::run)
+                .rebuildBackoff(100, TimeUnit.MILLISECONDS)
+                .build();
+
+        assertEquals(1, handler.handle(byId("existing")).size());
+        assertTrue(handler.handle(byId("missing")).isEmpty());
+        assertEquals(1, loadAlls.get());
+        assertEquals(1, handler.getRebuildFailureCount(TestRecord.class));
+
+        Thread.sleep(150);
+        assertEquals(1, handler.handle(byId("existing")).size());
+        assertEquals(2, handler.getRebuildFailureCount(TestRecord.class));
+        assertEquals(0, handler.getRebuildCount(TestRecord.class));
+
+        Thread.sleep(150);
+        assertTrue(handler.handle(byId("missing")).isEmpty());
+        assertEquals(1, handler.getRebuildCount(TestRecord.class));
+        assertEquals(1, handler.getFilteredCount(TestRecord.class));
+    }
+
+    @Test
+    public void testQueriesPassThroughWhileFilterBuilds() {
+        store.handle(OperationRequest.create(TestRecord.class).entity(new TestRecord("existing")).build());
+        List<Runnable> builds = new ArrayList<>();
+        NegativeLookupHandler handler = NegativeLookupHandler.builder(store, store.mappings)
+                .filter(TestRecord.class, 1000)
+                .executor(builds::add)
+                .build();
+
+        assertTrue(handler.handle(byId("missing")).isEmpty());
+        assertEquals(1, handler.handle(byId("existing")).size());
+        assertEquals(1, builds.size());
+        assertEquals(0, handler.getFilteredCount(TestRecord.class));
+
+        builds.get(0).run();
+        int before = store.queries.get();
+        assertTrue(handler.handle(byId("missing")).isEmpty());
+        assertEquals(before, store.queries.get());
+    }
+
+    @Test
+    public void testIdVisibleToReadersDuringCreate() {
+        AtomicReference<NegativeLookupHandler> self = new AtomicReference<>();
+        AtomicReference<QueryOperation.Response<TestRecord>> seenDuringCreate = new AtomicReference<>();
+        OperationHandler notifying = new ForwardingOperationHandler(store) {
+            @Override
+            public <T> CreateOperation.Response<T> handle(CreateOperation.Request<T> request) {
+                CreateOperation.Response<T> response = super.handle(request);
+                seenDuringCreate.set(self.get().handle(byId("new")));
+                return response;
+            }
+        };
+        NegativeLookupHandler handler = NegativeLookupHandler.builder(notifying, store.mappings)
+                .filter(TestRecord.class, 1000)
+                .executor(Runnable::run)
+                .build();
+        self.set(handler);
+        handler.handle(byId("warm-up"));
+
+        handler.handle(OperationRequest.create(TestRecord.class).entity(new TestRecord("new")).build());
+
+        assertEquals(1, seenDuringCreate.get().size());
+    }
+
+    @Test
+    public void testCountingFilterNeverForgetsPresentIds() {
+        CountingBloomFilter filter = new CountingBloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("id-" + i);
+        }
+        for (int i = 0; i < 500; i++) {
+            filter.remove("id-" + i);
+        }
+        for (int i = 500; i < 1000; i++) {
+            assertTrue(filter.mightContain("id-" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain("other-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 200);
+        assertEquals(500, filter.size());
+    }
+}
@@ -0,0 +1,152 @@
+package com.github.larsderidder.requestbuilder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for routing and stats collection in the dispatcher.
+ */
+public class OperationDispatcherTest {
+
+    static class Item {
+        private final String id;
+        private final String listId;
+
+        Item(String id, String listId) {
+            this.id = id;
+            this.listId = listId;
+        }
+
+        String getId() { return id; }
+        String getListId() { return listId; }
+    }
+
+    private OperationDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        EntityMappings mappings = new EntityMappings()
+                .register(EntityMapping.of(Item.class).id(Item::getId).parentId(Item::getListId).build());
+        dispatcher = new OperationDispatcher(new InMemoryOperationHandler(mappings));
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatch(OperationRequest.create(Item.class).entity(new Item("i" + i, "list-1")).build());
+        }
+    }
+
+    @Test
+    public void testRoutesEveryOperationType() {
+        OperationResponse query = dispatcher.dispatch(OperationRequest.query(Item.class).parentId("list-1").build());
+        assertTrue(query instanceof QueryOperation.Response);
+        assertEquals(3, ((QueryOperation.Response<?>) query).size());
+
+        OperationResponse delete = dispatcher.dispatch(OperationRequest.delete(Item.class).id("i0").build());
+        assertTrue(delete instanceof DeleteOperation.Response);
+        assertTrue(delete.isSuccess());
+    }
+
+    @Test
+    public void testNoStatsWhenDisabled() {
+        assertNull(OperationStats.current());
+        OperationResponse response = dispatcher.dispatch(OperationRequest.query(Item.class).id("i1").build());
+        assertNull(response.getMetadata());
+    }
+
+    @Test
+    public void testStatsAttachedWhenEnabled() {
+        dispatcher.setCollectStats(true);
+
+        OperationResponse response = dispatcher.dispatch(OperationRequest.query(Item.class).parentId("list-1").build());
+        OperationStats stats = response.getMetadata(OperationStats.class);
+
+        assertNotNull(stats);
+        assertEquals(3, stats.getRowsScanned());
+        assertEquals(3, stats.getRowsReturned());
+        assertTrue(stats.getHandleNanos() > 0);
+        assertTrue(stats.getNanos(OperationStats.Stage.HANDLE) >= stats.getLookupNanos());
+        assertEquals(OperationStats.CacheResult.NONE, stats.getCacheResult());
+        assertNull(OperationStats.current());
+    }
+
+    @Test
+    public void testStatsChainAfterHandlerMetadata() {
+        OperationStats stats = new OperationStats();
+        stats.record(OperationStats.Stage.DECODE, 1500);
+
+        DeleteOperation.Response<?> response = (DeleteOperation.Response<?>) dispatcher.dispatch(
+                OperationRequest.delete(Item.class).allWithParent("list-1").build(), stats);
+
+        assertEquals(3, response.getAffectedRows());
+        assertTrue(response.getMetadata() instanceof AffectedRows);
+        assertSame(stats, response.getMetadata(OperationStats.class));
+        assertEquals(1500, stats.getDecodeNanos());
+    }
+
+    @Test
+    public void testStatsSurviveBeanRoundTrip() throws Exception {
+        dispatcher.setCollectStats(true);
+        DeleteOperation.Response<?> response = (DeleteOperation.Response<?>) dispatcher.dispatch(
+                OperationRequest.delete(Item.class).allWithParent("list-1").build());
+
+        DeleteOperation.Response<?> copy = new DeleteOperation.Response<>();
+        for (PropertyDescriptor property : Introspector.getBeanInfo(DeleteOperation.Response.class).getPropertyDescriptors()) {
+            if (property.getReadMethod() != null && property.getWriteMethod() != null) {
+                property.getWriteMethod().invoke(copy, property.getReadMethod().invoke(response));
+            }
+        }
+
+        assertEquals(3, copy.getAffectedRows());
+        assertSame(response.getMetadata(OperationStats.class), copy.getMetadata(OperationStats.class));
+        assertEquals(2, copy.getAllMetadata().size());
+    }
+
+    @Test
+    public void testSampledRequestsAreHandledInsideSpans() {
+        List<Span> spans = new ArrayList<>();
+        List<TraceContext> seenByHandler = new ArrayList<>();
+        OperationDispatcher traced = new OperationDispatcher(new ForwardingOperationHandler(dispatcher.getHandler()) {
+            @Override
+            public <T> QueryOperation.Response<T> handle(QueryOperation.Request<T> request) {
+                seenByHandler.add(Tracer.current());
+                return super.handle(request);
+            }
+        });
+        Tracer tracer = new Tracer(1.0, spans::add);
+        traced.setTracer(tracer);
+
+        TraceContext root = tracer.startTrace();
+        traced.dispatch(OperationRequest.query(Item.class).id("i1").trace(root).build());
+
+        assertEquals(1, spans.size());
+        Span span = spans.get(0);
+        assertEquals(root.getTraceId(), span.getTraceId());
+        assertEquals(root.getSpanId(), span.getParentSpanId());
+        assertNotEquals(root.getSpanId(), span.getSpanId());
+        assertEquals("query Item", span.getName());
+        assertEquals(OperationResponse.Status.SUCCESS, span.getStatus());
+        assertEquals(span.getSpanId(), seenByHandler.get(0).getSpanId());
+        assertNull(Tracer.current());
+    }
+
+    @Test
+    public void testUnsampledRequestsRecordNothing() {
+        List<Span> spans = new ArrayList<>();
+        Tracer tracer = new Tracer(0.0, spans::add);
+        dispatcher.setTracer(tracer);
+
+        TraceContext root = tracer.startTrace();
+        assertSame(TraceContext.NOT_SAMPLED, root);
+        assertSame(root, root.newChild());
+
+        dispatcher.dispatch(OperationRequest.query(Item.class).id("i1").trace(root).build());
+        dispatcher.dispatch(OperationRequest.query(Item.class).id("i1").build());
+
+        assertTrue(spans.isEmpty());
+    }
+}
@@ -167,4 +167,270 @@ public class RequestBuilderTest {
         assertEquals("789", request.getReferenceId());
         assertEquals("abc", request.getContextId());
     }
+
+    @Test
+    public void testConditionalRequests() {
+        UpdateOperation.Request<TestEntity> update = OperationRequest.update(TestEntity.class)
+                .entity(new TestEntity("123", "Updated"))
+                .ifVersion("v3")
+                .build();
+        DeleteOperation.Request<TestEntity> delete = OperationRequest.delete(TestEntity.class)
+                .id("123")
+                .ifVersion("v3")
+                .build();
+        QueryOperation.Request<TestEntity> query = OperationRequest.query(TestEntity.class)
+                .id("123")
+                .ifNoneMatch("v3")
+                .build();
+
+        assertTrue(update.hasIfVersion());
+        assertEquals("v3", update.getIfVersion());
+        assertTrue(delete.hasIfVersion());
+        assertEquals("v3", delete.getIfVersion());
+        assertTrue(query.hasIfNoneMatch());
+        assertEquals("v3", query.getIfNoneMatch());
+        assertFalse(OperationRequest.update(TestEntity.class).build().hasIfVersion());
+    }
+
+    @Test
+    public void testConditionalResponses() {
+        QueryOperation.Response<TestEntity> notModified = new QueryOperation.Response<>(
+                OperationResponse.Status.NOT_MODIFIED
+        );
+        notModified.setVersion("v3");
+
+        assertTrue(notModified.isNotModified());
+        assertFalse(notModified.isSuccess());
+        assertFalse(notModified.isFailure());
+        assertTrue(notModified.isEmpty());
+        assertEquals("v3", notModified.getVersion());
+
+        UpdateOperation.Response<TestEntity> conflict = new UpdateOperation.Response<>(
+                OperationResponse.Status.CONFLICT, "Expected v3 but found v4"
+        );
+
+        assertTrue(conflict.isConflict());
+        assertTrue(conflict.isFailure());
+        assertEquals("Expected v3 but found v4", conflict.getMessage());
+    }
+
+    @Test
+    public void testDeleteAllWithParentRequest() {
+        DeleteOperation.Request<TestEntity> request = OperationRequest.delete(TestEntity.class)
+                .allWithParent("post-456")
+                .maxRows(100)
+                .build();
+
+        assertTrue(request.isAllWithParent());
+        assertNull(request.getId());
+        assertEquals("post-456", request.getParentId());
+        assertEquals(100, request.getMaxRows());
+
+        DeleteOperation.Response<TestEntity> response = new DeleteOperation.Response<>(
+                OperationResponse.Status.SUCCESS, null, new AffectedRows(42)
+        );
+        assertEquals(42, response.getAffectedRows());
+        assertEquals("42 rows affected", response.getMetadata().getDescription());
+        assertEquals(-1, new DeleteOperation.Response<TestEntity>(OperationResponse.Status.SUCCESS).getAffectedRows());
+    }
+
+    @Test
+    public void testCountAndExistsQueries() {
+        QueryOperation.Request<TestEntity> count = OperationRequest.query(TestEntity.class)
+                .parentId("parent-456")
+                .count()
+                .build();
+        QueryOperation.Request<TestEntity> exists = OperationRequest.query(TestEntity.class)
+                .contextId("ctx-abc")
+                .exists()
+                .build();
+
+        assertEquals(QueryOperation.Mode.COUNT, count.getMode());
+        assertTrue(count.isCountOnly());
+        assertEquals(QueryOperation.Mode.EXISTS, exists.getMode());
+        assertFalse(OperationRequest.query(TestEntity.class).build().isCountOnly());
+
+        QueryOperation.Response<TestEntity> response = new QueryOperation.Response<>(
+                OperationResponse.Status.SUCCESS, 12L
+        );
+        assertEquals(12, response.getCount());
+        assertTrue(response.exists());
+        assertTrue(response.getResults().isEmpty());
+
+        QueryOperation.Response<TestEntity> listed = new QueryOperation.Response<>(
+                OperationResponse.Status.SUCCESS, Arrays.asList(new TestEntity("1", "First"))
+        );
+        assertEquals(1, listed.getCount());
+    }
+
+    @Test
+    public void testTraceContextPropagation() {
+        TraceContext trace = new TraceContext(0x1234L, -1L, TraceContext.FLAG_SAMPLED);
+
+        assertSame(trace, OperationRequest.create(TestEntity.class).trace(trace).build().getTraceContext());
+        assertSame(trace, OperationRequest.query(TestEntity.class).trace(trace).build().getTraceContext());
+        assertSame(trace, OperationRequest.update(TestEntity.class).trace(trace).build().getTraceContext());
+        assertSame(trace, OperationRequest.delete(TestEntity.class).trace(trace).build().getTraceContext());
+        assertNull(OperationRequest.query(TestEntity.class).build().getTraceContext());
+
+        String encoded = trace.encode();
+        assertEquals("0000000000001234-ffffffffffffffff-01", encoded);
+        assertEquals(trace, TraceContext.decode(encoded));
+        assertSame(TraceContext.NOT_SAMPLED, TraceContext.decode(TraceContext.NOT_SAMPLED.encode()));
+        assertNull(TraceContext.decode("not-a-trace"));
+    }
+
+    @Test
+    public void testIdempotencyKeys() {
+        TestEntity entity = new TestEntity("1", "Test");
+
+        CreateOperation.Request<TestEntity> create = OperationRequest.create(TestEntity.class)
+                .entity(entity)
+                .idempotencyKey("req-42")
+                .build();
+        assertTrue(create.hasIdempotencyKey());
+        assertEquals("req-42", create.getIdempotencyKey());
+
+        UpdateOperation.Request<TestEntity> update = OperationRequest.update(TestEntity.class)
+                .entity(entity)
+                .idempotencyKey("req-43")
+                .build();
+        assertTrue(update.hasIdempotencyKey());
+        assertEquals("req-43", update.getIdempotencyKey());
+
+        assertFalse(OperationRequest.create(TestEntity.class).entity(entity).build().hasIdempotencyKey());
+        assertFalse(OperationRequest.update(TestEntity.class).entity(entity).build().hasIdempotencyKey());
+    }
+
+    @Test
+    public void testBuilderReset() {
+        CreateOperation.Request.Builder<TestEntity> builder = OperationRequest.create(TestEntity.class);
+        CreateOperation.Request<TestEntity> first = builder.entity(new TestEntity("1", "First"))
+                .idempotencyKey("k1")
+                .build();
+        CreateOperation.Request<TestEntity> second = builder.reset().entity(new TestEntity("2", "Second")).build();
+
+        assertEquals("1", first.getEntity().getId());
+        assertEquals("2", second.getEntity().getId());
+        assertFalse(second.hasIdempotencyKey());
+        assertEquals(TestEntity.class, second.getEntityType());
+
+        QueryOperation.Request.Builder<TestEntity> query = OperationRequest.query(TestEntity.class).id("1").count();
+        QueryOperation.Request<TestEntity> reused = query.reset().parentId("p").build();
+        assertNull(reused.getId());
+        assertEquals(QueryOperation.Mode.ENTITIES, reused.getMode());
+
+        DeleteOperation.Request<TestEntity> delete = OperationRequest.delete(TestEntity.class)
+                .allWithParent("p").maxRows(10).reset().id("1").build();
+        assertFalse(delete.isAllWithParent());
+        assertEquals(0, delete.getMaxRows());
+    }
+
+    @Test
+    public void testPooledCreate() {
+        CreateOperation.Pool<TestEntity> pool = new CreateOperation.Pool<>(TestEntity.class, 4);
+
+        CreateOperation.Request<TestEntity> request = pool.request(new TestEntity("1", "First"), "k1");
+        CreateOperation.Response<TestEntity> response = pool.response(OperationResponse.Status.SUCCESS, request.getEntity());
+        assertEquals("k1", request.getIdempotencyKey());
+        assertTrue(response.isSuccess());
+        assertEquals(2, pool.getAllocatedCount());
+
+        request.release();
+        response.release();
+        assertNull(request.getEntity());
+        assertNull(response.getStatus());
+        assertEquals(2, pool.getIdleCount());
+
+        CreateOperation.Request<TestEntity> reused = pool.request(new TestEntity("2", "Second"));
+        assertSame(request, reused);
+        assertEquals("2", reused.getEntity().getId());
+        assertFalse(reused.hasIdempotencyKey());
+        assertSame(response, pool.response(OperationResponse.Status.FAILURE, null));
+        assertEquals(2, pool.getAllocatedCount());
+
+        reused.release();
+        try {
+            reused.release();
+            fail("Expected a second release to throw");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+
+        CreateOperation.Request<TestEntity> unpooled = OperationRequest.create(TestEntity.class)
+                .entity(new TestEntity("3", "Third"))
+                .build();
+        unpooled.release();
+        assertEquals("3", unpooled.getEntity().getId());
+    }
+
+    @Test
+    public void testEmptyQueryResultsShared() {
+        QueryOperation.Response<TestEntity> failure = QueryOperation.Response.empty(OperationResponse.Status.FAILURE);
+        QueryOperation.Response<String> notModified = QueryOperation.Response.empty(OperationResponse.Status.NOT_MODIFIED);
+
+        assertTrue(failure.isEmpty());
+        assertSame(failure.getResults(), notModified.getResults());
+
+        QueryOperation.Response<TestEntity> built = new QueryOperation.Response<>(OperationResponse.Status.SUCCESS, null);
+        built.getResults().add(new TestEntity());
+        assertEquals(1, built.size());
+        new QueryOperation.Response<TestEntity>(OperationResponse.Status.FAILURE).getResults().add(new TestEntity());
+    }
+
+    @Test
+    public void testIdentifierBuilders() {
+        Identifier parent = Identifier.of(456);
+        QueryOperation.Request<TestEntity> query = OperationRequest.query(TestEntity.class)
+                .parentId(parent)
+                .contextId(Identifier.of("2016-Q1"))
+                .id("user-123")
+                .build();
+
+        assertSame(parent, query.getParentIdKey());
+        assertEquals("456", query.getParentId());
+        assertEquals("2016-Q1", query.getContextId());
+        assertEquals(Identifier.of("user-123"), query.getIdKey());
+        assertNull(query.getReferenceIdKey());
+
+        QueryOperation.Request<TestEntity> overridden = OperationRequest.query(TestEntity.class)
+                .parentId(parent)
+                .parentId("789")
+                .build();
+        assertEquals(Identifier.of(789), overridden.getParentIdKey());
+
+        QueryOperation.Request<TestEntity> byKey = OperationRequest.query(TestEntity.class)
+                .id(Identifier.of(42))
+                .build();
+        assertTrue(byKey.hasId());
+        assertEquals("42", byKey.getId());
+        assertSame(byKey.getId(), byKey.getId());
+        assertFalse(OperationRequest.query(TestEntity.class).id(Identifier.of("")).build().hasId());
+
+        DeleteOperation.Request<TestEntity> delete = OperationRequest.delete(TestEntity.class)
+                .id(Identifier.of(7))
+                .build();
+        assertEquals("7", delete.getId());
+        assertTrue(delete.getIdKey().isNumeric());
+        assertNull(delete.getParentIdKey());
+    }
+
+    @Test
+    public void testSharedMetadataStaysPerResponse() {
+        AffectedRows shared = new AffectedRows(1);
+        DeleteOperation.Response<TestEntity> first = new DeleteOperation.Response<>(
+                OperationResponse.Status.SUCCESS, null, shared);
+        DeleteOperation.Response<TestEntity> second = new DeleteOperation.Response<>(
+                OperationResponse.Status.SUCCESS, null, shared);
+
+        OperationStats stats = new OperationStats();
+        first.addMetadata(stats);
+        first.addMetadata(stats);
+
+        assertSame(stats, first.getMetadata(OperationStats.class));
+        assertEquals(2, first.getAllMetadata().size());
+        assertNull(second.getMetadata(OperationStats.class));
+        assertEquals(1, second.getAllMetadata().size());
+        assertSame(shared, second.getMetadata());
+    }
 }
@@ -0,0 +1,34 @@
+package com.github.larsderidder.requestbuilder;
+
+/**
+ * Entity with an id and an optional parent id, shared by the handler tests.
+ */
+class TestRecord {
+
+    private final String id;
+    private final String parentId;
+
+    TestRecord(String id) {
+        this(id, null);
+    }
+
+    TestRecord(String id, String parentId) {
+        this.id = id;
+        this.parentId = parentId;
+    }
+
+    String getId() { return id; }
+    String getParentId() { return parentId; }
+
+    /**
+     * Creates mappings with {@link TestRecord} registered.
+     *
+     * @return the mappings
+     */
+    static EntityMappings mappings() {
+        return new EntityMappings().register(EntityMapping.of(TestRecord.class)
+                .id(TestRecord::getId)
+                .parentId(TestRecord::getParentId)
+                .build());
+    }
+}
@@ -0,0 +1,174 @@
+package com.github.larsderidder.requestbuilder;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for workload capture, replay and latency percentiles.
+ */
+public class WorkloadReplayTest {
+
+    public static class Session {
+        private final String id;
+        private final String userId;
+
+        public Session(String id, String userId) {
+            this.id = id;
+            this.userId = userId;
+        }
+
+        public String getId() { return id; }
+        public String getUserId() { return userId; }
+    }
+
+    static class SessionCodec implements EntityCodec {
+        @Override
+        public String encode(Object entity) {
+            Session session = (Session) entity;
+            return session.getId() + "\t\"" + session.getUserId() + "\"";
+        }
+
+        @Override
+        public <T> T decode(Class<T> entityType, String encoded) {
+            String[] parts = encoded.split("\t");
+            return entityType.cast(new Session(parts[0], parts[1].substring(1, parts[1].length() - 1)));
+        }
+    }
+
+    private static EntityMappings mappings() {
+        return new EntityMappings()
+                .register(EntityMapping.of(Session.class).id(Session::getId).parentId(Session::getUserId).build());
+    }
+
+    private static String capture() throws Exception {
+        StringWriter out = new StringWriter();
+        try (WorkloadRecorder recorder = new WorkloadRecorder(out, new SessionCodec())) {
+            OperationHandler handler = new CapturingHandler(new InMemoryOperationHandler(mappings()), recorder);
+            for (int i = 0; i < 20; i++) {
+                handler.handle(OperationRequest.create(Session.class).entity(new Session("s" + i, "u1")).build());
+                handler.handle(OperationRequest.query(Session.class).id("s" + i).build());
+            }
+            handler.handle(OperationRequest.query(Session.class).parentId("u1").count().build());
+            handler.handle(OperationRequest.update(Session.class)
+                    .entity(new Session("s1", "u2")).ifVersion("2").build());
+            handler.handle(OperationRequest.delete(Session.class).allWithParent("u1").maxRows(5)
+                    .trace(TraceContext.newTrace(true)).build());
+            assertEquals(43, recorder.getRecordedCount());
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void testCaptureRoundTrip() throws Exception {
+        List<CapturedRequest> workload = new WorkloadReader(new SessionCodec()).read(new StringReader(capture()));
+
+        assertEquals(43, workload.size());
+        assertEquals(0, workload.get(0).getOffsetNanos());
+        assertTrue(workload.get(42).getOffsetNanos() >= workload.get(1).getOffsetNanos());
+
+        CreateOperation.Request<?> create = (CreateOperation.Request<?>) workload.get(0).getRequest();
+        assertEquals(Session.class, create.getEntityType());
+        assertEquals("u1", ((Session) create.getEntity()).getUserId());
+
+        QueryOperation.Request<?> count = (QueryOperation.Request<?>) workload.get(40).getRequest();
+        assertEquals(QueryOperation.Mode.COUNT, count.getMode());
+        assertEquals("u1", count.getParentId());
+
+        UpdateOperation.Request<?> update = (UpdateOperation.Request<?>) workload.get(41).getRequest();
+        assertEquals("2", update.getIfVersion());
+
+        DeleteOperation.Request<?> delete = (DeleteOperation.Request<?>) workload.get(42).getRequest();
+        assertTrue(delete.isAllWithParent());
+        assertEquals(5, delete.getMaxRows());
+        assertTrue(delete.getTraceContext().isSampled());
+    }
+
+    @Test
+    public void testReplayReportsPerOperation() throws Exception {
+        List<CapturedRequest> workload = new WorkloadReader(new SessionCodec()).read(new StringReader(capture()));
+
+        ReplayReport report = WorkloadReplayer.builder()
+                .speedup(10)
+                .threads(1)
+                .build()
+                .replay(workload, new InMemoryOperationHandler(mappings()));
+
+        assertEquals(20, report.getSummary("create").getCount());
+        assertEquals(0, report.getSummary("create").getFailures());
+        assertEquals(21, report.getSummary("query").getCount());
+        assertEquals(1, report.getSummary("delete").getCount());
+        assertEquals(43, report.getSummary(ReplayReport.ALL).getCount());
+        assertTrue(report.getSummary(ReplayReport.ALL).getThroughputPerSecond() > 0);
+        assertTrue(report.getSummary("query").getP99Nanos() <= report.getSummary("query").getMaxNanos());
+        assertTrue(report.toString().startsWith("op"));
+    }
+
+    @Test
+    public void testReplaySendsByOffset() throws Exception {
+        List<String> sent = new ArrayList<>();
+        OperationHandler recording = new ForwardingOperationHandler(new InMemoryOperationHandler(mappings())) {
+            @Override
+            public <T> QueryOperation.Response<T> handle(QueryOperation.Request<T> request) {
+                synchronized (sent) {
+                    sent.add(request.getId());
+                }
+                return super.handle(request);
+            }
+        };
+        List<CapturedRequest> workload = Arrays.asList(
+                new CapturedRequest(2_000_000, OperationRequest.query(Session.class).id("s3").build()),
+                new CapturedRequest(0, OperationRequest.query(Session.class).id("s1").build()),
+                new CapturedRequest(1_000_000, OperationRequest.query(Session.class).id("s2").build()));
+
+        WorkloadReplayer.builder().threads(1).build().replay(workload, recording);
+
+        assertEquals(Arrays.asList("s1", "s2", "s3"), sent);
+    }
+
+    @Test
+    public void testConcurrentRecordingIsInOffsetOrder() throws Exception {
+        StringWriter out = new StringWriter();
+        try (WorkloadRecorder recorder = new WorkloadRecorder(out)) {
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        recorder.record(OperationRequest.query(Session.class).id("s" + i).build());
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        List<CapturedRequest> workload = new WorkloadReader().read(new StringReader(out.toString()));
+
+        assertEquals(2000, workload.size());
+        for (int i = 1; i < workload.size(); i++) {
+            assertTrue(workload.get(i).getOffsetNanos() >= workload.get(i - 1).getOffsetNanos());
+        }
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertEquals(10000, histogram.getCount());
+        assertEquals(5_000_000, histogram.getValueAtPercentile(50), 5_000_000 / 60.0);
+        assertEquals(9_900_000, histogram.getValueAtPercentile(99), 9_900_000 / 60.0);
+        assertEquals(10_000_000, histogram.getValueAtPercentile(100));
+        assertEquals(5_000_500, histogram.getMean(), 0.001);
+        assertEquals(0, new LatencyHistogram().getValueAtPercentile(99));
+    }
+}
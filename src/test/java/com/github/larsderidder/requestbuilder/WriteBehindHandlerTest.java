@@ -0,0 +1,312 @@
+package com.github.larsderidder.requestbuilder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for buffering and coalescing updates in the write-behind handler.
+ */
+public class WriteBehindHandlerTest {
+
+    static class Counter {
+        private final String id;
+        private final long value;
+
+        Counter(String id, long value) {
+            this.id = id;
+            this.value = value;
+        }
+
+        String getId() { return id; }
+        long getValue() { return value; }
+    }
+
+    /** Handler that records every request it receives. */
+    static class RecordingHandler implements OperationHandler {
+        final List<Object> received = new ArrayList<>();
+
+        @Override
+        public synchronized <T> CreateOperation.Response<T> handle(CreateOperation.Request<T> request) {
+            received.add(request);
+            return new CreateOperation.Response<>(OperationResponse.Status.SUCCESS, request.getEntity());
+        }
+
+        @Override
+        public synchronized <T> QueryOperation.Response<T> handle(QueryOperation.Request<T> request) {
+            received.add(request);
+            return new QueryOperation.Response<>(OperationResponse.Status.SUCCESS);
+        }
+
+        @Override
+        public synchronized <T> UpdateOperation.Response<T> handle(UpdateOperation.Request<T> request) {
+            received.add(request);
+            return new UpdateOperation.Response<>(OperationResponse.Status.SUCCESS);
+        }
+
+        @Override
+        public synchronized <T> DeleteOperation.Response<T> handle(DeleteOperation.Request<T> request) {
+            received.add(request);
+            return new DeleteOperation.Response<>(OperationResponse.Status.SUCCESS);
+        }
+
+        synchronized List<Counter> updates() {
+            List<Counter> updates = new ArrayList<>();
+            for (Object request : received) {
+                if (request instanceof UpdateOperation.Request) {
+                    updates.add((Counter) ((UpdateOperation.Request<?>) request).getEntity());
+                }
+            }
+            return updates;
+        }
+    }
+
+    private final EntityMappings mappings = new EntityMappings()
+            .register(EntityMapping.of(Counter.class).id(Counter::getId).build());
+
+    private static UpdateOperation.Request<Counter> update(String id, long value) {
+        return OperationRequest.update(Counter.class).entity(new Counter(id, value)).build();
+    }
+
+    @Test
+    public void testLastUpdateWins() {
+        RecordingHandler store = new RecordingHandler();
+        WriteBehindHandler handler = WriteBehindHandler.builder(store, mappings).buffer(Counter.class).build();
+
+        for (int i = 1; i <= 100; i++) {
+            UpdateOperation.Response<Counter> response = handler.handle(update("a", i));
+            assertTrue(response.isSuccess());
+        }
+        handler.handle(update("b", 7));
+
+        assertTrue(store.received.isEmpty());
+        assertEquals(2, handler.flush());
+
+        List<Counter> written = store.updates();
+        assertEquals(2, written.size());
+        long a = written.get(0).getId().equals("a") ? written.get(0).getValue() : written.get(1).getValue();
+        assertEquals(100, a);
+
+        WriteBehindMetrics metrics = handler.getMetrics();
+        assertEquals(101, metrics.getUpdatesBuffered());
+        assertEquals(2, metrics.getUpdatesWritten());
+        assertEquals(50.5, metrics.getCoalescingRatio(), 0.001);
+        assertEquals(0, metrics.getPending());
+    }
+
+    @Test
+    public void testMergeFunction() {
+        RecordingHandler store = new RecordingHandler();
+        WriteBehindHandler handler = WriteBehindHandler.builder(store, mappings)
+                .buffer(Counter.class, (pending, incoming) ->
+                        new Counter(pending.getId(), pending.getValue() + incoming.getValue()))
+                .build();
+
+        handler.handle(update("a", 1));
+        handler.handle(update("a", 2));
+        handler.handle(update("a", 3));
+        handler.close();
+
+        assertEquals(6, store.updates().get(0).getValue());
+    }
+
+    @Test
+    public void testDeleteCancelsPendingUpdates() {
+        RecordingHandler store = new RecordingHandler();
+        WriteBehindHandler handler = WriteBehindHandler.builder(store, mappings).buffer(Counter.class).build();
+
+        handler.handle(update("a", 1));
+        handler.handle(OperationRequest.delete(Counter.class).id("a").build());
+        handler.flush();
+
+        assertTrue(store.updates().isEmpty());
+        assertEquals(1, store.received.size());
+        assertEquals(1, handler.getMetrics().getUpdatesCancelled());
+    }
+
+    @Test
+    public void testSizeTriggerAndQueryReadsOwnWrites() throws Exception {
+        RecordingHandler store = new RecordingHandler();
+        WriteBehindHandler handler = WriteBehindHandler.builder(store, mappings)
+                .buffer(Counter.class)
+                .flushThreshold(3)
+                .build();
+
+        handler.handle(update("a", 1));
+        handler.handle(update("b", 1));
+        assertEquals(2, handler.getPendingCount());
+        handler.handle(update("c", 1));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (handler.getMetrics().getUpdatesWritten() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, handler.getPendingCount());
+        assertEquals(3, store.updates().size());
+
+        handler.handle(update("d", 1));
+        handler.handle(OperationRequest.query(Counter.class).id("d").build());
+        assertEquals(4, store.updates().size());
+        assertTrue(store.received.get(4) instanceof QueryOperation.Request);
+    }
+
+    @Test
+    public void testConditionalUpdatesAreWrittenThrough() {
+        RecordingHandler store = new RecordingHandler();
+        WriteBehindHandler handler = WriteBehindHandler.builder(store, mappings).buffer(Counter.class).build();
+
+        handler.handle(update("a", 1));
+        UpdateOperation.Response<Counter> response = handler.handle(OperationRequest.update(Counter.class)
+                .entity(new Counter("a", 2))
+                .ifVersion("v1")
+                .build());
+
+        assertNull(response.getMessage());
+        assertEquals(2, store.updates().size());
+        assertEquals(2, store.updates().get(1).getValue());
+    }
+
+    @Test
+    public void testTimeTrigger() throws Exception {
+        RecordingHandler store = new RecordingHandler();
+        WriteBehindHandler handler = WriteBehindHandler.builder(store, mappings)
+                .buffer(Counter.class)
+                .flushInterval(10, TimeUnit.MILLISECONDS)
+                .build();
+        try {
+            handler.handle(update("a", 1));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (handler.getMetrics().getUpdatesWritten() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(1, store.updates().size());
+            assertTrue(handler.getMetrics().getMaxFlushLagNanos() > 0);
+        } finally {
+            handler.close();
+        }
+    }
+
+    /** Recording handler whose next {@code failures} updates throw. */
+    static class FlakyHandler extends RecordingHandler {
+        final AtomicInteger failures;
+
+        FlakyHandler(int failures) {
+            this.failures = new AtomicInteger(failures);
+        }
+
+        @Override
+        public synchronized <T> UpdateOperation.Response<T> handle(UpdateOperation.Request<T> request) {
+            if (failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("store unavailable");
+            }
+            return super.handle(request);
+        }
+    }
+
+    @Test
+    public void testFailedWriteIsRetriedWithNewerUpdate() {
+        FlakyHandler store = new FlakyHandler(2);
+        WriteBehindHandler handler = WriteBehindHandler.builder(store, mappings)
+                .buffer(Counter.class, (pending, incoming) ->
+                        new Counter(pending.getId(), pending.getValue() + incoming.getValue()))
+                .build();
+
+        handler.handle(update("a", 1));
+        assertEquals(0, handler.flush());
+        assertEquals(1, handler.getPendingCount());
+        handler.handle(update("a", 2));
+        assertEquals(0, handler.flush());
+        assertEquals(1, handler.flush());
+
+        assertEquals(3, store.updates().get(0).getValue());
+        assertEquals(2, handler.getMetrics().getWriteFailures());
+        assertEquals("store unavailable", handler.getLastWriteFailure().getMessage());
+    }
+
+    @Test
+    public void testPeriodicFlushSurvivesFailedWrites() throws Exception {
+        FlakyHandler store = new FlakyHandler(2);
+        WriteBehindHandler handler = WriteBehindHandler.builder(store, mappings)
+                .buffer(Counter.class)
+                .flushInterval(10, TimeUnit.MILLISECONDS)
+                .build();
+        try {
+            handler.handle(update("a", 1));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (handler.getMetrics().getUpdatesWritten() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(1, store.updates().size());
+            assertEquals(2, handler.getMetrics().getWriteFailures());
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    public void testEntryAbandonedAfterMaxWriteAttempts() {
+        FlakyHandler store = new FlakyHandler(Integer.MAX_VALUE);
+        WriteBehindHandler handler = WriteBehindHandler.builder(store, mappings)
+                .buffer(Counter.class)
+                .maxWriteAttempts(3)
+                .build();
+
+        handler.handle(update("a", 1));
+        for (int i = 0; i < 5; i++) {
+            handler.flush();
+        }
+
+        WriteBehindMetrics metrics = handler.getMetrics();
+        assertEquals(3, metrics.getWriteFailures());
+        assertEquals(1, metrics.getUpdatesAbandoned());
+        assertEquals(0, metrics.getPending());
+        assertNotNull(handler.getLastWriteFailure());
+    }
+
+    @Test
+    public void testUpdatesAfterCloseAreForwarded() {
+        RecordingHandler store = new RecordingHandler();
+        WriteBehindHandler handler = WriteBehindHandler.builder(store, mappings).buffer(Counter.class).build();
+        handler.close();
+
+        UpdateOperation.Response<Counter> response = handler.handle(update("a", 1));
+
+        assertNotEquals(WriteBehindHandler.ACCEPTED_MESSAGE, response.getMessage());
+        assertEquals(1, store.updates().size());
+        assertEquals(0, handler.getPendingCount());
+    }
+
+    @Test
+    public void testBulkDeleteSeesBufferedMoveIntoParent() {
+        EntityMappings records = TestRecord.mappings();
+        InMemoryOperationHandler store = new InMemoryOperationHandler(records);
+        store.handle(OperationRequest.create(TestRecord.class).entity(new TestRecord("x", "q")).build());
+        WriteBehindHandler handler = WriteBehindHandler.builder(store, records).buffer(TestRecord.class).build();
+
+        handler.handle(OperationRequest.update(TestRecord.class).entity(new TestRecord("x", "p")).build());
+        handler.handle(OperationRequest.delete(TestRecord.class).allWithParent("p").build());
+
+        assertTrue(store.handle(OperationRequest.query(TestRecord.class).id("x").build()).isEmpty());
+        assertEquals(0, handler.getPendingCount());
+    }
+
+    @Test
+    public void testBulkDeleteSeesBufferedMoveOutOfParent() {
+        EntityMappings records = TestRecord.mappings();
+        InMemoryOperationHandler store = new InMemoryOperationHandler(records);
+        store.handle(OperationRequest.create(TestRecord.class).entity(new TestRecord("x", "p")).build());
+        WriteBehindHandler handler = WriteBehindHandler.builder(store, records).buffer(TestRecord.class).build();
+
+        handler.handle(OperationRequest.update(TestRecord.class).entity(new TestRecord("x", "q")).build());
+        handler.handle(OperationRequest.delete(TestRecord.class).allWithParent("p").build());
+        handler.flush();
+
+        QueryOperation.Response<TestRecord> moved = store.handle(OperationRequest.query(TestRecord.class).parentId("q").build());
+        assertEquals(1, moved.size());
+        assertEquals(0, handler.getMetrics().getWriteFailures());
+    }
+}